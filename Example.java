@@ -1,20 +1,42 @@
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.html.dom.HTMLDocumentImpl;
+import org.cyberneko.html.parsers.DOMFragmentParser;
 import org.openqa.selenium.firefox.FirefoxDriver;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.html.HTMLDocument;
+import org.xml.sax.InputSource;
 
+import seleniumhelper.BattleSnapshot;
 import seleniumhelper.ShowdownHelper;
 import seleniumhelper.ShowdownHelper.TurnEndStatus;
 import seleniumhelper.loginterpret.*;
+import seleniumhelper.loginterpret.events.EventCursor;
+import seleniumhelper.loginterpret.events.ProtocolParser;
 import seleniumhelper.loginterpret.events.TIEvent;
+import seleniumhelper.loginterpret.events.TIEventData;
+import seleniumhelper.loginterpret.events.TIEventDispatcher;
 
 public class Example  {
     public static void main(String[] args) throws Exception {
     	//testBattleLogFile();
+    	//testBattleArchive();
     	//testBattle();
+    	//benchmarkStripHTML();
+    	//benchmarkEventDispatch();
+    	//benchmarkEventCursor();
+    	//benchmarkCorpusParser();
+    	//benchmarkProtocol();
     	benchmark();
     }
     
@@ -136,17 +158,18 @@ public class Example  {
     }
     
     public static void testBattleLogFile() {
-    	String text = "";
+    	BattleLog bl;
 		try {
-			Scanner r = new Scanner(new File("battlesample_html.log"));
-			while (r.hasNextLine()) {
-				text += r.nextLine() + "\n";
-			}
+			// An empty file is an empty log
+			File empty = File.createTempFile("empty", ".log");
+			empty.deleteOnExit();
+			System.out.println("Empty log: " + BattleLog.fromFile(empty).getTokenCount() + " lines");
+			
+			bl = BattleLog.fromFile(new File("battlesample_html.log"));
 		}
 		catch (Exception e) {
 			return;
 		}
-		BattleLog bl = new BattleLog(text);
 //		System.out.println(bl.getCurrentPokemonAtTurn("RODAN", 5, false));
 //		System.out.println(bl.getCurrentPokemonAtTurn("RODAN", 6, false));
 //		System.out.println(bl.getCurrentPokemonAtTurn("Cloak", 6, true));
@@ -163,6 +186,31 @@ public class Example  {
 		}
     }
     
+    public static void testBattleArchive() throws Exception {
+    	// An empty file is an archive with no battles
+    	File empty = File.createTempFile("empty", ".log");
+    	empty.deleteOnExit();
+    	BattleArchive emptyArchive = new BattleArchive(empty);
+    	try {
+    		System.out.println("Empty archive: " + (emptyArchive.iterator().hasNext() ? "has battles" : "no battles"));
+    	}
+    	finally {
+    		emptyArchive.close();
+    	}
+    	
+    	BattleArchive archive = new BattleArchive(new File("battles.log"));
+    	try {
+    		for (BattleLog bl : archive) {
+    			String[] players = bl.getPlayerNames();
+    			System.out.println(archive.getBattleCount() + ": " + (players == null ? "?" : players[0] + " vs " + players[1])
+    					+ ", " + bl.getFormat() + ", " + bl.getTurnCount() + " turns");
+    		}
+    	}
+    	finally {
+    		archive.close();
+    	}
+    }
+    
     public static void benchmark() throws Exception {
     	FirefoxDriver driver = new FirefoxDriver();
 		ShowdownHelper showdown = new ShowdownHelper(driver, "http://play.pokemonshowdown.com/~~rissole-showdown.herokuapp.com:80");
@@ -194,5 +242,336 @@ public class Example  {
     		
     		System.out.println("Loaded Pokemon "+n+" in "+((endTime-startTime)/1000000)+"ms");
     	}
+    	
+    	startTime = System.nanoTime();
+    	BattleSnapshot snapshot = showdown.getBattleSnapshot();
+    	endTime = System.nanoTime();
+    	System.out.println("Loaded both teams ("+snapshot.mySide.pokemon.size()+" and "+snapshot.yourSide.pokemon.size()
+    			+" Pokemon) in one snapshot in "+((endTime-startTime)/1000000)+"ms");
+    }
+    
+    /**
+     * Compares BattleLog.stripHTML against the NekoHTML DOM based version it replaced:
+     * checks they give the same text for a saved log, then times both.
+     */
+    public static void benchmarkStripHTML() throws Exception {
+		Scanner r = new Scanner(new File("battlesample_html.log"));
+		StringBuilder sb = new StringBuilder();
+		while (r.hasNextLine()) {
+			sb.append(r.nextLine()).append("\n");
+		}
+		r.close();
+		String text = sb.toString();
+		
+		if (!nekoStripHTML(text).equals(BattleLog.stripHTML(text))) {
+			System.out.println("stripHTML output differs from NekoHTML!");
+			return;
+		}
+		
+		int iterations = 200;
+		// warm up both first
+		for (int i = 0; i < iterations; ++i) {
+			nekoStripHTML(text);
+			BattleLog.stripHTML(text);
+		}
+		long startTime = System.nanoTime();
+		for (int i = 0; i < iterations; ++i) {
+			nekoStripHTML(text);
+		}
+		long nekoTime = System.nanoTime() - startTime;
+		startTime = System.nanoTime();
+		for (int i = 0; i < iterations; ++i) {
+			BattleLog.stripHTML(text);
+		}
+		long scannerTime = System.nanoTime() - startTime;
+		System.out.println("NekoHTML:  "+(nekoTime/iterations/1000)+"us per log");
+		System.out.println("stripHTML: "+(scannerTime/iterations/1000)+"us per log");
+    }
+    
+    /**
+     * Times classifying log lines against event maps of growing size, with the compiled
+     * dispatcher and with the old linear search through every regex.
+     */
+    public static void benchmarkEventDispatch() {
+    	Random random = new Random(0);
+    	for (int size = 4; size <= 4096; size *= 4) {
+    		TIEventData[] eventMap = new TIEventData[size];
+    		for (int i = 0; i < size-1; ++i) {
+    			eventMap[i] = new TIEventData("^<div class=\"event"+i+"\">.+? used .+?!</div>$", null, 0);
+    		}
+    		eventMap[size-1] = new TIEventData(null, null, 0);
+    		TIEventDispatcher dispatcher = new TIEventDispatcher(TIEventData.validate(eventMap));
+    		
+    		String[] lines = new String[1000];
+    		for (int i = 0; i < lines.length; ++i) {
+    			if (random.nextBoolean()) {
+    				lines[i] = "<div class=\"event"+random.nextInt(size-1)+"\">The foe's Ninetales used Flamethrower!</div>";
+    			}
+    			else {
+    				lines[i] = "<div>The foe's Ninetales used <strong>Sunny Day</strong>!</div>";
+    			}
+    		}
+    		
+    		int iterations = Math.max(10, 20000/size);
+    		for (int i = 0; i < iterations; ++i) {
+    			for (String line : lines) {
+    				dispatcher.find(line);
+    				linearFindEvent(eventMap, line);
+    			}
+    		}
+    		for (int i = 0; i < iterations; ++i) {
+    			for (String line : lines) {
+    				if (dispatcher.find(line) != linearFindEvent(eventMap, line)) {
+    					System.out.println("Dispatcher differs from linear search on: "+line);
+    					return;
+    				}
+    			}
+    		}
+    		long startTime = System.nanoTime();
+    		for (int i = 0; i < iterations; ++i) {
+    			for (String line : lines) {
+    				dispatcher.find(line);
+    			}
+    		}
+    		long dispatchTime = System.nanoTime() - startTime;
+    		startTime = System.nanoTime();
+    		for (int i = 0; i < iterations; ++i) {
+    			for (String line : lines) {
+    				linearFindEvent(eventMap, line);
+    			}
+    		}
+    		long linearTime = System.nanoTime() - startTime;
+    		long classified = (long)iterations * lines.length;
+    		System.out.println(size+" events: dispatcher "+(dispatchTime/classified)+"ns, linear "+(linearTime/classified)+"ns per line");
+    	}
+    }
+    
+    /**
+     * Measures the garbage made scanning every turn of a battle log for events,
+     * with TurnInfo (an event object per event) and with one reused EventCursor.
+     */
+    public static void benchmarkEventCursor() throws Exception {
+    	BattleLog bl = BattleLog.fromFile(new File("battlesample_html.log"));
+    	com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    	long threadId = Thread.currentThread().getId();
+    	EventCursor cursor = new EventCursor();
+    	int iterations = 200;
+    	
+    	// warm up both first
+    	long events = 0;
+    	for (int i = 0; i < iterations; ++i) {
+    		events += scanWithTurnInfo(bl) + scanWithCursor(bl, cursor);
+    	}
+    	
+    	long startBytes = threads.getThreadAllocatedBytes(threadId);
+    	events = 0;
+    	for (int i = 0; i < iterations; ++i) {
+    		events += scanWithTurnInfo(bl);
+    	}
+    	long turnInfoBytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    	System.out.println("TurnInfo:    "+(turnInfoBytes/events)+" bytes per event");
+    	
+    	startBytes = threads.getThreadAllocatedBytes(threadId);
+    	events = 0;
+    	for (int i = 0; i < iterations; ++i) {
+    		events += scanWithCursor(bl, cursor);
+    	}
+    	long cursorBytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    	System.out.println("EventCursor: "+(cursorBytes/events)+" bytes per event ("+cursorBytes+" bytes for "+events+" events)");
+    }
+    
+    /**
+     * Times parsing a corpus of battle logs with CorpusParser on 1, 2, 4... threads, up to one per processor.
+     * The corpus is made by copying a saved log into several archives of many battles each.
+     */
+    public static void benchmarkCorpusParser() throws Exception {
+    	Scanner r = new Scanner(new File("battlesample_html.log"));
+    	StringBuilder sb = new StringBuilder();
+    	while (r.hasNextLine()) {
+    		sb.append(r.nextLine()).append("\n");
+    	}
+    	r.close();
+    	String log = sb.toString();
+    	
+    	File corpus = new File("corpus");
+    	corpus.mkdir();
+    	for (int i = 0; i < 16; ++i) {
+    		PrintWriter out = new PrintWriter(new File(corpus, "battles"+i+".log"), "UTF-8");
+    		for (int j = 0; j < 200; ++j) {
+    			out.print(log);
+    		}
+    		out.close();
+    	}
+    	
+    	BattleReducer<long[]> countEvents = new BattleReducer<long[]>() {
+    		public long[] empty() {
+    			return new long[2];
+    		}
+    		
+    		public long[] reduce(BattleLog battle, List<TurnInfo> turns) {
+    			long[] counts = { 1, 0 };
+    			for (TurnInfo turn : turns) {
+    				counts[1] += turn.getEvents().size();
+    			}
+    			return counts;
+    		}
+    		
+    		public long[] combine(long[] left, long[] right) {
+    			left[0] += right[0];
+    			left[1] += right[1];
+    			return left;
+    		}
+    	};
+    	
+    	long singleTime = 0;
+    	for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+    		CorpusParser parser = new CorpusParser(new ForkJoinPool(threads));
+    		// warm up first
+    		parser.parse(corpus, countEvents);
+    		long startTime = System.nanoTime();
+    		long[] counts = parser.parse(corpus, countEvents);
+    		long time = System.nanoTime() - startTime;
+    		parser.getPool().shutdown();
+    		if (threads == 1) {
+    			singleTime = time;
+    		}
+    		System.out.println(threads+" threads: "+counts[0]+" battles, "+counts[1]+" events in "+(time/1000000)+"ms ("
+    				+(counts[0]*1000000000L/time)+" battles/s, "+String.format("%.2f", (double)singleTime/time)+"x)");
+    	}
+    }
+    
+    /**
+     * Compares reading a battle's events from the raw protocol (ShowdownHelper.readProtocolEvents)
+     * with reading them from the log HTML (ShowdownHelper.updateBattleLog and TurnInfo).
+     * The same battle is made in both forms and read a turn at a time, as it would arrive;
+     * prints how much text each path reads, and its time and garbage per battle.
+     */
+    public static void benchmarkProtocol() {
+    	int turns = 200;
+    	String[] protocol = new String[turns + 1];
+    	String[] html = new String[turns + 1];
+    	protocol[0] = "|player|p1|me|1\n|player|p2|foe|2\n|gametype|singles\n|start\n"
+    			+"|switch|p1a: Hard|Ninetales, F|1000/1000\n|switch|p2a: Serpentine|Heatran, M|1000/1000\n";
+    	// The log shows the start of the battle as a line of its own, which is an unknown event
+    	html[0] = "<div>Battle between me and foe started!</div>\n<div class=\"spacer\"></div>\n"
+    			+"<div>me sent out Hard (Ninetales)!</div>\n<div>foe sent out Serpentine (Heatran)!</div>\n";
+    	for (int t = 1; t <= turns; ++t) {
+    		StringBuilder p = new StringBuilder("|turn|"+t+"\n");
+    		StringBuilder h = new StringBuilder("<h2>Turn "+t+"</h2>\n");
+    		p.append("|move|p1a: Hard|Flamethrower|p2a: Serpentine\n|-damage|p2a: Serpentine|"+(1000-4*t)+"/1000\n");
+    		h.append("<div>Hard used <strong>Flamethrower</strong>!</div>\n<div>The foe's Serpentine lost 1% of its health!</div>\n");
+    		p.append("|move|p2a: Serpentine|Earth Power|p1a: Hard\n|-damage|p1a: Hard|"+(1000-4*t)+"/1000\n");
+    		h.append("<div>The foe's Serpentine used <strong>Earth Power</strong>!</div>\n<div>Hard lost 1% of its health!</div>\n");
+    		protocol[t] = p.toString();
+    		html[t] = h.toString();
+    	}
+    	long protocolChars = 0;
+    	long htmlChars = 0;
+    	for (int t = 0; t <= turns; ++t) {
+    		protocolChars += protocol[t].length();
+    		htmlChars += html[t].length();
+    	}
+    	
+    	com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    	long threadId = Thread.currentThread().getId();
+    	int iterations = 200;
+    	
+    	// warm up both first
+    	for (int i = 0; i < iterations; ++i) {
+    		readProtocol(protocol);
+    		readLogHTML(html);
+    	}
+    	
+    	long startBytes = threads.getThreadAllocatedBytes(threadId);
+    	long startTime = threads.getCurrentThreadCpuTime();
+    	long protocolEvents = 0;
+    	for (int i = 0; i < iterations; ++i) {
+    		protocolEvents += readProtocol(protocol);
+    	}
+    	long protocolTime = threads.getCurrentThreadCpuTime() - startTime;
+    	long protocolBytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    	
+    	startBytes = threads.getThreadAllocatedBytes(threadId);
+    	startTime = threads.getCurrentThreadCpuTime();
+    	long htmlEvents = 0;
+    	for (int i = 0; i < iterations; ++i) {
+    		htmlEvents += readLogHTML(html);
+    	}
+    	long htmlTime = threads.getCurrentThreadCpuTime() - startTime;
+    	long htmlBytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    	
+    	System.out.println("Protocol: "+protocolChars+" chars, "+(protocolEvents/iterations)+" events, "
+    			+(protocolTime/iterations/1000)+"us and "+(protocolBytes/iterations)+" bytes allocated per battle");
+    	System.out.println("Log HTML: "+htmlChars+" chars, "+(htmlEvents/iterations)+" events, "
+    			+(htmlTime/iterations/1000)+"us and "+(htmlBytes/iterations)+" bytes allocated per battle");
+    }
+    
+    private static int readProtocol(String[] protocol) {
+    	ProtocolParser parser = new ProtocolParser("me");
+    	List<TIEvent> events = new ArrayList<TIEvent>();
+    	for (String turn : protocol) {
+    		parser.append(turn, events);
+    	}
+    	return events.size();
+    }
+    
+    private static int readLogHTML(String[] html) {
+    	BattleLog bl = new BattleLog("");
+    	int events = 0;
+    	for (int t = 0; t < html.length; ++t) {
+    		bl.appendLogText(html[t]);
+    		events += bl.getTurnInfo(t).getEvents().size();
+    	}
+    	return events;
+    }
+    
+    private static int scanWithTurnInfo(BattleLog bl) {
+    	int events = 0;
+    	for (int i = 0; i <= bl.getTurnCount(); ++i) {
+    		events += new TurnInfo(bl.getTurnHTML(bl.getTurnNumber(i)), new TIContext()).getEvents().size();
+    	}
+    	return events;
+    }
+    
+    private static int scanWithCursor(BattleLog bl, EventCursor cursor) {
+    	int events = 0;
+    	for (int i = 0; i <= bl.getTurnCount(); ++i) {
+    		bl.readTurn(bl.getTurnNumber(i), cursor);
+    		while (cursor.next()) {
+    			++events;
+    		}
+    	}
+    	return events;
+    }
+    
+    /**
+     * The old TIEvent.findEventByMatch, kept for comparison.
+     */
+    private static TIEventData linearFindEvent(TIEventData[] eventMap, String line) {
+    	for (TIEventData ted : eventMap) {
+    		if (ted.regex == null || ted.regex.matcher(line).find()) {
+    			return ted;
+    		}
+    	}
+    	return null;
+    }
+    
+    /**
+     * The NekoHTML implementation of BattleLog.stripHTML, kept for comparison.
+     */
+    private static String nekoStripHTML(String logHTML) throws Exception {
+		HTMLDocument document = new HTMLDocumentImpl();
+		DOMFragmentParser parser = new DOMFragmentParser();
+		DocumentFragment doc = document.createDocumentFragment();
+		parser.parse(new InputSource(new ByteArrayInputStream(logHTML.getBytes())), doc);
+		
+		StringBuffer text = new StringBuffer();
+		NodeList list = doc.getChildNodes();
+		for (int i = 0; i < list.getLength(); ++i) {
+			Node node = list.item(i);
+			if (node.getTextContent().trim().length() > 0)
+				text.append(node.getTextContent() + "\n");
+		}
+		return text.toString();
     }
-}
\ No newline at end of file
+}
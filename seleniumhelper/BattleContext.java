@@ -0,0 +1,29 @@
+package seleniumhelper;
+
+/**
+ * Who we are playing in the battle in progress, worked out once when it starts, so deciding which
+ * side of <code>curRoom.battle</code> an owner's Pokemon are on doesn't need the page.
+ * The slots of both teams are kept here too, so Pokemon can be found by name without the page.
+ * @author burse
+ */
+final class BattleContext {
+	
+	static final String MY_SIDE = "mySide";
+	static final String YOUR_SIDE = "yourSide";
+	
+	final String opponentName;
+	
+	// Slot of each Pokemon on both teams, or null if it hasn't been read yet
+	SlotIndex slots;
+	
+	BattleContext(String opponentName) {
+		this.opponentName = opponentName;
+	}
+	
+	/**
+	 * @return Key of owner's side in <code>curRoom.battle</code>: "yourSide" for the opponent, otherwise "mySide".
+	 */
+	String side(String owner) {
+		return owner.equals(opponentName) ? YOUR_SIDE : MY_SIDE;
+	}
+}
@@ -0,0 +1,284 @@
+package seleniumhelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import seleniumhelper.loginterpret.SymbolTable;
+
+/**
+ * The state of both sides of a battle, read from the page all at once by
+ * <code>ShowdownHelper.getBattleSnapshot()</code>. Nothing in it changes after it is read,
+ * so a whole turn's decisions can be made from one snapshot without going back to the page.
+ * @author burse
+ */
+public final class BattleSnapshot {
+	
+	/**
+	 * One Pokemon on a team, as it was when the snapshot was taken.
+	 */
+	public static final class Pokemon {
+		/** The slot the Pokemon is in. [0-5] */
+		public final int slot;
+		/** Nickname, or species name if it has none. */
+		public final String name;
+		public final String species;
+		/** <code>SymbolTable.SPECIES</code> symbol of the species. */
+		public final int speciesSymbol;
+		/** 3 character abbreviation, lower case: 'tox', 'psn', 'frz', 'par', 'brn', or null if no status. */
+		public final String status;
+		/** Exact HP on our side, a percentage (0-100) on the opponent's. */
+		public final int hp;
+		/** Exact max HP on our side, 100 on the opponent's. */
+		public final int maxHP;
+		public final String gender;
+		public final int level;
+		/** Full ability name (ie "Drought"), or null if it isn't known. */
+		public final String ability;
+		/** Ability short name (ie "drought"), or null if it isn't known. */
+		public final String abilityId;
+		/** <code>SymbolTable.ABILITIES</code> symbol, or <code>SymbolTable.NONE</code> if it isn't known. */
+		public final int abilitySymbol;
+		/** Full item name (ie "Griseous Orb"), or null if no item. */
+		public final String item;
+		/** Item short name (ie "griseousorb"), or null if no item. */
+		public final String itemId;
+		/** <code>SymbolTable.ITEMS</code> symbol, or <code>SymbolTable.NONE</code> if no item. */
+		public final int itemSymbol;
+		/** Full move names (ie "Leech Seed"), with every Hidden Power just "Hidden Power". */
+		public final List<String> moves;
+		/** Move ids (ie "leechseed"), from <code>SymbolTable.moveId</code>, so every Hidden Power is "hiddenpower". */
+		public final List<String> moveIds;
+		/** Volatiles the Pokemon has; see <code>ShowdownHelper.hasVolatile</code>. */
+		public final List<String> volatiles;
+		/** <code>(stat,boost)</code> pairs; see <code>ShowdownHelper.getBoosts</code>. */
+		public final Map<String,Integer> boosts;
+		/** Whether the Pokemon is on the field. */
+		public final boolean active;
+		public final boolean fainted;
+		
+		private Pokemon(int slot, JSONObject jo) throws JSONException {
+			this.slot = slot;
+			name = string(jo, "name");
+			species = SymbolTable.SPECIES.intern(string(jo, "species"));
+			speciesSymbol = SymbolTable.SPECIES.symbol(species);
+			status = string(jo, "status");
+			hp = jo.optInt("hp");
+			maxHP = jo.optInt("maxhp");
+			gender = string(jo, "gender");
+			level = jo.optInt("level");
+			ability = string(jo, "ability");
+			abilityId = SymbolTable.ABILITIES.intern(string(jo, "abilityid"));
+			abilitySymbol = SymbolTable.ABILITIES.symbol(abilityId);
+			item = string(jo, "item");
+			itemId = SymbolTable.ITEMS.intern(string(jo, "itemid"));
+			itemSymbol = SymbolTable.ITEMS.symbol(itemId);
+			moves = strings(jo.optJSONArray("moves"));
+			List<String> ids = new ArrayList<String>(moves.size());
+			for (String move : moves) {
+				// Made from the names like the battle log's moves, so both give the same symbols
+				ids.add(SymbolTable.MOVES.intern(SymbolTable.moveId(move)));
+			}
+			moveIds = Collections.unmodifiableList(ids);
+			volatiles = strings(jo.optJSONArray("volatiles"));
+			Map<String,Integer> boostMap = new HashMap<String,Integer>();
+			JSONObject jsonBoosts = jo.optJSONObject("boosts");
+			if (jsonBoosts != null) {
+				@SuppressWarnings("unchecked")
+				Iterator<String> itr = jsonBoosts.keys();
+				while (itr.hasNext()) {
+					String k = itr.next();
+					boostMap.put(k, jsonBoosts.getInt(k));
+				}
+			}
+			boosts = Collections.unmodifiableMap(boostMap);
+			active = jo.optBoolean("active");
+			fainted = jo.optBoolean("fainted");
+		}
+		
+		/**
+		 * @return HP as a fraction of max HP (0-1), or 0 if max HP isn't known.
+		 */
+		public double getHPFraction() {
+			return (maxHP == 0) ? 0 : (double)hp / maxHP;
+		}
+		
+		public boolean hasVolatile(String _volatile) {
+			return volatiles.contains(_volatile);
+		}
+		
+		public String toString() {
+			return species;
+		}
+	}
+	
+	/**
+	 * One player's side of the field.
+	 */
+	public static final class Side {
+		/** Name of the side's owner, or empty string if it isn't known yet. */
+		public final String owner;
+		/** The team in slot order. */
+		public final List<Pokemon> pokemon;
+		/** Slot of the Pokemon on the field, or the one last sent out; -1 if there isn't one. */
+		public final int currentSlot;
+		
+		private Side(JSONObject jo) throws JSONException {
+			String name = string(jo, "name");
+			owner = (name == null) ? "" : name;
+			List<Pokemon> team = new ArrayList<Pokemon>();
+			JSONArray jsonTeam = jo.optJSONArray("pokemon");
+			for (int i = 0; jsonTeam != null && i < jsonTeam.length(); ++i) {
+				team.add(new Pokemon(i, jsonTeam.getJSONObject(i)));
+			}
+			pokemon = Collections.unmodifiableList(team);
+			currentSlot = jo.optInt("current", -1);
+		}
+		
+		/**
+		 * @return The Pokemon on the field, or the one last sent out; null if there isn't one.
+		 * @see ShowdownHelper#getCurrentPokemon(String, boolean)
+		 */
+		public Pokemon getCurrentPokemon() {
+			return (currentSlot < 0 || currentSlot >= pokemon.size()) ? null : pokemon.get(currentSlot);
+		}
+		
+		/**
+		 * @return The Pokemon in the slot, or null if there isn't one.
+		 */
+		public Pokemon getPokemon(int slot) {
+			return (slot < 0 || slot >= pokemon.size()) ? null : pokemon.get(slot);
+		}
+		
+		/**
+		 * @return Species names of the team, in slot order.
+		 */
+		public List<String> getTeam() {
+			List<String> team = new ArrayList<String>(pokemon.size());
+			for (Pokemon p : pokemon) {
+				team.add(p.species);
+			}
+			return team;
+		}
+		
+		/**
+		 * @return Species names of the team's non-fainted Pokemon, in slot order.
+		 */
+		public List<String> getAliveTeam() {
+			List<String> team = new ArrayList<String>(pokemon.size());
+			for (Pokemon p : pokemon) {
+				if (!p.fainted) {
+					team.add(p.species);
+				}
+			}
+			return team;
+		}
+	}
+	
+	/**
+	 * Script returning the battle state as JSON, or null if there is no battle.
+	 * Abilities and items are resolved the same way as <code>ShowdownHelper.getPokemonAttributes</code>.
+	 */
+	static final String SCRIPT =
+		"var b = curRoom.battle;" +
+		"if (!b) return null;" +
+		"function pokemon(s, p) {" +
+		"	var ability = p.ability;" +
+		"	if (ability == \"\")" +
+		"		ability = (p.abilities && p.abilities.length == 1) ? p.abilities[0] : null;" +
+		"	var item = (p.item == null || p.item == \"\") ? null : p.item;" +
+		"	var moves = [];" +
+		"	for (var i = 0; p.moves && i < p.moves.length; ++i) {" +
+		"		var moveName = Tools.getMove(p.moves[i]).name;" +
+		"		if (moveName.indexOf(\"Hidden Power\") != -1)" +
+		"			moveName = \"Hidden Power\";" +
+		"		moves.push(moveName);" +
+		"	}" +
+		"	var volatiles = [];" +
+		"	for (var v in p.volatiles)" +
+		"		volatiles.push(v);" +
+		"	return {'name':p.name, 'species':p.species, 'status':p.status, 'hp':p.hp, 'maxhp':p.maxhp," +
+		"		'gender':p.gender, 'level':p.level," +
+		"		'ability':(ability == null) ? null : Tools.getAbility(ability).name, 'abilityid':ability," +
+		"		'item':(item == null) ? null : Tools.getItem(item).name, 'itemid':item," +
+		"		'moves':moves, 'volatiles':volatiles, 'boosts':p.boosts," +
+		"		'active':(s.active[0] == p), 'fainted':!!p.fainted};" +
+		"}" +
+		"function side(s) {" +
+		"	var pokes = [];" +
+		"	var current = -1;" +
+		"	for (var i = 0; i < s.pokemon.length; ++i) {" +
+		"		pokes.push(pokemon(s, s.pokemon[i]));" +
+		"		if (s.pokemon[i] == (s.active[0] || s.lastPokemon))" +
+		"			current = i;" +
+		"	}" +
+		"	return {'name':s.name, 'pokemon':pokes, 'current':current};" +
+		"}" +
+		"return JSON.stringify({'turn':b.turn, 'done':(b.done > 0), 'mySide':side(b.mySide), 'yourSide':side(b.yourSide)});";
+	
+	/** Our side of the field. */
+	public final Side mySide;
+	/** The opponent's side of the field. */
+	public final Side yourSide;
+	public final int turn;
+	/** Whether the battle is over. */
+	public final boolean done;
+	
+	/**
+	 * Decodes what <code>SCRIPT</code> returned.
+	 * @throws JSONException If it isn't a battle state.
+	 */
+	BattleSnapshot(String json) throws JSONException {
+		JSONObject jo = new JSONObject(json);
+		mySide = new Side(jo.getJSONObject("mySide"));
+		yourSide = new Side(jo.getJSONObject("yourSide"));
+		turn = jo.optInt("turn");
+		done = jo.optBoolean("done");
+	}
+	
+	/**
+	 * Gets a player's side of the field.
+	 * @param owner Which team we want. Anyone but the opponent gets our side, as in <code>ShowdownHelper</code>.
+	 */
+	public Side getSide(String owner) {
+		return owner.equals(yourSide.owner) ? yourSide : mySide;
+	}
+	
+	/**
+	 * @return The Pokemon in the slot of owner's team, or null if there isn't one.
+	 */
+	public Pokemon getPokemon(int slot, String owner) {
+		return getSide(owner).getPokemon(slot);
+	}
+	
+	/**
+	 * @return The slot of the Pokemon with the species in owner's team, or -1 if it isn't there.
+	 */
+	public int getSlotForSpecies(String pokemon, String owner) {
+		for (Pokemon p : getSide(owner).pokemon) {
+			if (pokemon.equals(p.species)) {
+				return p.slot;
+			}
+		}
+		return -1;
+	}
+	
+	private static String string(JSONObject jo, String key) {
+		return jo.isNull(key) ? null : jo.optString(key);
+	}
+	
+	private static List<String> strings(JSONArray array) throws JSONException {
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; array != null && i < array.length(); ++i) {
+			list.add(array.getString(i));
+		}
+		return Collections.unmodifiableList(list);
+	}
+}
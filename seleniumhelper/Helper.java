@@ -1,6 +1,7 @@
 package seleniumhelper;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.*;
 import org.openqa.selenium.support.ui.*;
@@ -12,6 +13,10 @@ import org.openqa.selenium.support.ui.*;
 public class Helper {
 	protected WebDriver driver;
 	
+	// The driver's script timeout, as set through setScriptTimeout. WebDriver can't be asked for it,
+	// so it is assumed to be the default (0) until set here.
+	private long scriptTimeoutMillis;
+	
 	public Helper(WebDriver driver) {
 		this.driver = driver;
 	}
@@ -101,6 +106,33 @@ public class Helper {
 		return (T)((JavascriptExecutor)driver).executeScript(script, args);
 	}
 	
+	/**
+	 * Runs an asynchronous script, waiting until it calls the callback passed as its last argument.
+	 * The driver's script timeout is changed while it runs, and then put back to what was last set with
+	 * <code>setScriptTimeout</code> (the default if it hasn't been), as WebDriver can't be asked for it.
+	 * @param timeoutMillis How long to let the script run before giving up with a TimeoutException.
+	 * @return What the script passed to the callback.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T javascriptAsync(long timeoutMillis, String script, Object...args) {
+		driver.manage().timeouts().setScriptTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		try {
+			return (T)((JavascriptExecutor)driver).executeAsyncScript(script, args);
+		}
+		finally {
+			driver.manage().timeouts().setScriptTimeout(scriptTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Sets how long asynchronous scripts run with the driver may take. Set it here rather than on the driver,
+	 * so <code>javascriptAsync</code> can put it back afterwards.
+	 */
+	public void setScriptTimeout(long timeoutMillis) {
+		scriptTimeoutMillis = timeoutMillis;
+		driver.manage().timeouts().setScriptTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+	
 	/**
 	 * Temporary hack to clear textboxes, since it seems broken.
 	 * @param cssSelector
@@ -17,6 +17,11 @@ import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
 import seleniumhelper.loginterpret.BattleLog;
+import seleniumhelper.loginterpret.EventStream;
+import seleniumhelper.loginterpret.SymbolTable;
+import seleniumhelper.loginterpret.LogWatcher;
+import seleniumhelper.loginterpret.events.ProtocolParser;
+import seleniumhelper.loginterpret.events.TIEvent;
 
 /**
  * Selenium helper functions specifically for Pokemon Showdown.
@@ -32,9 +37,32 @@ public class ShowdownHelper extends Helper {
 	
 	private BattleLog battlelog;
 	
+	// Strings being waited for in the battle log
+	private LogWatcher logWatcher;
+	
+	// Sends battle events to listeners as they are received
+	private EventStream eventStream;
+	
 	// Have we pressed the Kick Inactive Player button?
 	private boolean battleTimerOn;
 	
+	// Does waitForNextTurn wait to be told by the page, rather than checking it every 500ms?
+	private boolean notifiedTurnWait;
+	
+	// Number of battle log nodes fetched into battlelog so far, and the id the log element was tagged
+	// with when they were (a different id on the page means it's a different log, so fetch it all again)
+	private int logNodesRead;
+	private String logId;
+	
+	// Are chat messages fetched into the battle log?
+	private boolean fetchChats;
+	
+	// Reads the battle protocol captured from the page, or null if it hasn't been captured
+	private ProtocolParser protocolParser;
+	
+	// Opponent of the battle in progress, or null if we aren't in one (or don't know the opponent yet)
+	private BattleContext battle;
+	
 	/**
 	 * Creates an instance of helper functions for Pokemon Showdown automation
 	 * @param driver The WebDriver that will be used for automation
@@ -46,7 +74,15 @@ public class ShowdownHelper extends Helper {
 		this.rootURL = rootURL;
 		this.currentUser = "";
 		this.battlelog = null;
+		this.logWatcher = new LogWatcher();
+		this.eventStream = new EventStream();
 		this.battleTimerOn = false;
+		this.battle = null;
+		this.notifiedTurnWait = false;
+		this.logNodesRead = 0;
+		this.logId = null;
+		this.fetchChats = true;
+		this.protocolParser = null;
 	}
 	
 	/**
@@ -58,7 +94,15 @@ public class ShowdownHelper extends Helper {
 		rootURL = "http://play.pokemonshowdown.com";
 		this.currentUser = "";
 		this.battlelog = null;
+		this.logWatcher = new LogWatcher();
+		this.eventStream = new EventStream();
 		this.battleTimerOn = false;
+		this.battle = null;
+		this.notifiedTurnWait = false;
+		this.logNodesRead = 0;
+		this.logId = null;
+		this.fetchChats = true;
+		this.protocolParser = null;
 	}
 	
 	/**
@@ -83,16 +127,16 @@ public class ShowdownHelper extends Helper {
 		// If we store the By we risk accessing a stale element...
 		String loginCssSelector = "button[name='login']";
 		waitForElementPresent(By.cssSelector(loginCssSelector), 20);
-
+		
 		clickAt(By.cssSelector(loginCssSelector));
 	    WebElement usernameTextbox = driver.findElement(By.cssSelector("input[name='username']"));
 	    usernameTextbox.clear();
 	    usernameTextbox.sendKeys(userName);
 	    clickAt(By.cssSelector("button[type='submit']"));
-	    
+	
 	    if (password.length() > 0) {
 		    waitForElementPresent(By.cssSelector("input[name='password']"));
-		    
+		
 		    WebElement passwordTextbox = driver.findElement(By.cssSelector("input[name='password']"));
 		    passwordTextbox.clear();
 		    passwordTextbox.sendKeys(password);
@@ -156,6 +200,8 @@ public class ShowdownHelper extends Helper {
 		
 		initBattleLog();
 		battleTimerOn = false;
+		endBattleContext();
+		startBattleContext();
 		
 		if (driver.findElement(By.cssSelector("div.whatdo")).getText().contains("How will you start the battle?")) {
 			return TurnEndStatus.SWITCH;
@@ -174,17 +220,49 @@ public class ShowdownHelper extends Helper {
 	//// Battle functions
 	
 	/**
-	 * Gets the opponent's user name.
+	 * Gets the opponent's user name. During a battle this is only read from the page once.
 	 * @return Opponent's user name, or empty string on failure.
 	 */
 	public String getOpponentName() {
-		List<WebElement> allElements = driver.findElements(By.cssSelector("div.trainer"));
-		for (WebElement e : allElements) {
-			if (!e.getText().equals(getUserName())) {
-				return e.getText();
+		BattleContext context = startBattleContext();
+		return (context == null) ? "" : context.opponentName;
+	}
+	
+	/**
+	 * Works out who we are playing in the battle in progress, if that hasn't been done yet.
+	 * @return The battle's context, or null if the opponent can't be found on the page.
+	 */
+	private BattleContext startBattleContext() {
+		if (battle == null) {
+			List<WebElement> allElements = driver.findElements(By.cssSelector("div.trainer"));
+			for (WebElement e : allElements) {
+				String name = e.getText();
+				if (!name.equals(getUserName())) {
+					// Not kept until the page shows who it is
+					if (name.length() != 0) {
+						battle = new BattleContext(name);
+					}
+					break;
+				}
 			}
 		}
-		return "";
+		return battle;
+	}
+	
+	/**
+	 * Forgets who we were playing, once the battle is over or we have left it.
+	 */
+	private void endBattleContext() {
+		battle = null;
+	}
+	
+	/**
+	 * Gets which side of the battle owner's Pokemon are on.
+	 * @return "yourSide" for the opponent, otherwise "mySide".
+	 */
+	private String getSide(String owner) {
+		BattleContext context = startBattleContext();
+		return (context == null) ? BattleContext.MY_SIDE : context.side(owner);
 	}
 	
 	/**
@@ -196,6 +274,7 @@ public class ShowdownHelper extends Helper {
 		if (isElementPresent(By.cssSelector("button[type='submit']"))) {
 			clickAt(By.cssSelector("button[type='submit']"));
 		}
+		endBattleContext();
 	}
 	
 	/**
@@ -204,6 +283,7 @@ public class ShowdownHelper extends Helper {
 	public void surrender() {
 		sendMessage("/surrender");
 		waitForBattleLogContains(getOpponentName() + " won the battle!", true);
+		endBattleContext();
 	}
 	
 	/**
@@ -283,26 +363,75 @@ public class ShowdownHelper extends Helper {
 		LOST
 	}
 	
+	/**
+	 * Script for waiting until the page asks us to make a decision or the battle ends, without polling:
+	 * a MutationObserver checks as soon as anything on the page changes, and calls back with
+	 * "whatdo" or "done", or "timeout" once arguments[0] milliseconds have passed.
+	 */
+	private static final String TURN_WAIT_SCRIPT =
+		"var callback = arguments[arguments.length - 1];" +
+		"var timeout = arguments[0];" +
+		"function turnState() {" +
+		"	if (document.querySelector('div.whatdo') != null)" +
+		"		return 'whatdo';" +
+		"	if (curRoom.battle && curRoom.battle.done > 0)" +
+		"		return 'done';" +
+		"	return null;" +
+		"}" +
+		"var state = turnState();" +
+		"if (state != null) {" +
+		"	callback(state);" +
+		"	return;" +
+		"}" +
+		"var finished = false;" +
+		"var observer;" +
+		"var timer;" +
+		"function finish(state) {" +
+		"	if (finished)" +
+		"		return;" +
+		"	finished = true;" +
+		"	observer.disconnect();" +
+		"	clearTimeout(timer);" +
+		"	callback(state);" +
+		"}" +
+		"observer = new MutationObserver(function() {" +
+		"	var state = turnState();" +
+		"	if (state != null)" +
+		"		finish(state);" +
+		"});" +
+		"observer.observe(document.body, {'childList':true, 'subtree':true, 'attributes':true});" +
+		"timer = setTimeout(function() { finish('timeout'); }, timeout);";
+	
+	// Longest wait for a turn in one script call when there is no kick to do, in milliseconds
+	private static final int TURN_WAIT_MILLIS = 60000;
+	
+	/**
+	 * Sets how <code>waitForNextTurn</code> waits.
+	 * @param notified If true, a hook in the page tells us the moment a decision is asked for or the battle ends.
+	 * If false (the default), the page is checked every 500ms.
+	 */
+	public void setNotifiedTurnWait(boolean notified) {
+		notifiedTurnWait = notified;
+	}
+	
 	/**
 	 * Waits for the next turn to begin or the battle to end, kicking inactive players.
 	 * @param kickAfterSeconds Clicks 'Kick inactive player' after this number of seconds. 
 	 * Set to 0 to never kick
 	 * @return TurnEndStatus indicator.
+	 * @see ShowdownHelper#setNotifiedTurnWait(boolean)
 	 */
 	public TurnEndStatus waitForNextTurn(int kickAfterSeconds) {
-		int waited = 0;
-		boolean gameOver = false;
-		while (!isElementPresent(By.cssSelector("div.whatdo")) && !gameOver) {
-			if (!battleTimerOn && kickAfterSeconds != 0 && waited >= kickAfterSeconds*1000) {
-				kickInactivePlayer();
-				kickAfterSeconds = 0;
-			}
-			sleep(500);
-			waited += 500;
-			gameOver = ((Long)javascript("return curRoom.battle.done;") > 0);
+		boolean gameOver;
+		if (notifiedTurnWait) {
+			gameOver = waitForTurnNotified(kickAfterSeconds);
+		}
+		else {
+			gameOver = waitForTurnPolling(kickAfterSeconds);
 		}
 		updateBattleLog();
 		if (gameOver) {
+			endBattleContext();
 			if (battlelog.contains(getUserName() + " won the battle!", true)) {
 				return TurnEndStatus.WON;
 			}
@@ -322,6 +451,52 @@ public class ShowdownHelper extends Helper {
 		return TurnEndStatus.UNKNOWN;
 	}
 	
+	/**
+	 * Checks the page every 500ms until a decision is asked for or the battle ends.
+	 * @return True if the battle is over.
+	 */
+	private boolean waitForTurnPolling(int kickAfterSeconds) {
+		int waited = 0;
+		boolean gameOver = false;
+		while (!isElementPresent(By.cssSelector("div.whatdo")) && !gameOver) {
+			if (!battleTimerOn && kickAfterSeconds != 0 && waited >= kickAfterSeconds*1000) {
+				kickInactivePlayer();
+				kickAfterSeconds = 0;
+			}
+			sleep(500);
+			waited += 500;
+			gameOver = ((Long)javascript("return curRoom.battle.done;") > 0);
+		}
+		return gameOver;
+	}
+	
+	/**
+	 * Waits for the page to say a decision is asked for or the battle has ended. The wait is broken
+	 * into script calls no longer than the time left until we should kick, so kicking happens on time.
+	 * @return True if the battle is over.
+	 */
+	private boolean waitForTurnNotified(int kickAfterSeconds) {
+		long start = System.currentTimeMillis();
+		while (true) {
+			long waited = System.currentTimeMillis() - start;
+			boolean kicking = !battleTimerOn && kickAfterSeconds != 0;
+			if (kicking && waited >= kickAfterSeconds*1000L) {
+				kickInactivePlayer();
+				kickAfterSeconds = 0;
+				kicking = false;
+			}
+			long timeout = kicking ? Math.min(TURN_WAIT_MILLIS, kickAfterSeconds*1000L - waited) : TURN_WAIT_MILLIS;
+			// The driver gets extra time, so the script always finishes by itself
+			String state = javascriptAsync(timeout + 10000, TURN_WAIT_SCRIPT, timeout);
+			if ("whatdo".equals(state)) {
+				return false;
+			}
+			if ("done".equals(state)) {
+				return true;
+			}
+		}
+	}
+	
 	/**
 	 * Finds the WebElement of the button with the specified move name.
 	 * @param moveName Move name (case insensitive)
@@ -433,7 +608,24 @@ public class ShowdownHelper extends Helper {
 			"}" + 
 			"return moves;"
 		, slot, getShortNames);
-		return moves;
+		return getShortNames ? intern(moves, SymbolTable.MOVES) : moves;
+	}
+	
+	/**
+	 * Gets the moves the specified Pokemon, on our team, currently has.
+	 * @param slot The slot that the Pokemon is in. [0-5]
+	 * @return int Array - <code>SymbolTable.MOVES</code> symbols of the moves it has, from their <code>SymbolTable.moveId</code>
+	 */
+	public int[] getMoveSymbols(int slot) {
+		List<String> moves = getMoves(slot, true);
+		if (moves == null) {
+			return new int[0];
+		}
+		int[] symbols = new int[moves.size()];
+		for (int i = 0; i < symbols.length; ++i) {
+			symbols[i] = SymbolTable.MOVES.symbol(SymbolTable.moveId(moves.get(i)));
+		}
+		return symbols;
 	}
 	
 	/**
@@ -519,22 +711,44 @@ public class ShowdownHelper extends Helper {
 	
 	/**
 	 * Returns the slot on owner's team in which the Pokemon with the specified name is in.
+	 * The slots of both teams are read once and kept until a Pokemon is sent or dragged out or a name can't be found;
+	 * a slot found there is checked against the page by reading just that Pokemon's name.
 	 * @param pokemon Name of Pokemon species
 	 * @param owner Which team we are investigating
 	 * @return Integer - 0-5, slot. -1 on error.
 	 */
 	public int getSlotForSpecies(String pokemon, String owner) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
-		for (int i = 0; i < 6; ++i) {
-			String species = javascript("var p = curRoom.battle[arguments[0]].pokemon[arguments[1]]; if (p!=null) return p.species;", side, i);
-			if (pokemon.equals(species)) {
-				return i;
+		return findSlot(pokemon, owner, false);
+	}
+	
+	/**
+	 * Returns the slot on owner's team in which the Pokemon with the specified nickname is in.
+	 * @param nickname Nickname of the Pokemon (its species name if it doesn't have one)
+	 * @param owner Which team we are investigating
+	 * @return Integer - 0-5, slot. -1 on error.
+	 */
+	public int getSlotForNickname(String nickname, String owner) {
+		return findSlot(nickname, owner, true);
+	}
+	
+	private int findSlot(String name, String owner, boolean byNickname) {
+		String side = getSide(owner);
+		BattleContext context = startBattleContext();
+		int switchIns = (battlelog == null) ? 0 : battlelog.getSwitchInCount();
+		if (context != null && context.slots != null && context.slots.switchIns == switchIns) {
+			int slot = context.slots.slot(side, name, byNickname);
+			// The log may not have caught up with the page, so make sure the Pokemon is still there
+			if (slot != -1 && name.equals(javascript(SlotIndex.CHECK_SCRIPT, side, slot, SlotIndex.field(byNickname)))) {
+				return slot;
 			}
 		}
-		return -1;
+		// Not read yet, a Pokemon has switched in since, the slots have changed, or the name is new
+		// (eg a forme change): read it again
+		SlotIndex slots = new SlotIndex((List<?>)javascript(SlotIndex.SCRIPT), switchIns);
+		if (context != null) {
+			context.slots = slots;
+		}
+		return slots.slot(side, name, byNickname);
 	}
 	
 	/**
@@ -558,10 +772,7 @@ public class ShowdownHelper extends Helper {
 		if (slot < 0 || slot > 5) {
 			return null;
 		}
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		if (!json) {
 			return javascript("var p=curRoom.battle[arguments[0]].pokemon[arguments[1]]; if (p!=null) return p[arguments[2]];", side, slot, attribute);
 		}
@@ -573,6 +784,7 @@ public class ShowdownHelper extends Helper {
 	/**
 	 * Returns the attributes of the specified Pokemon. Note that it is generally faster to gather all the
 	 * information of a Pokemon in one call like this if you wish to retrieve more than one field.
+	 * To read several Pokemon, <code>getBattleSnapshot</code> is faster still.
 	 * @param slot The slot that the Pokemon is in. [0-5]
 	 * @param owner Which team the Pokemon is on
 	 * @return A Map containing all the attributes:<br>
@@ -585,10 +797,7 @@ public class ShowdownHelper extends Helper {
 	 * <b>'item'</b>: see getItem<br>
 	 */
 	public Map<String, Object> getPokemonAttributes(int slot, String owner) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		String info = (String)javascript(
 				"var p=curRoom.battle[arguments[0]].pokemon[arguments[1]];" +
 				"var ability = p.ability;" +
@@ -627,6 +836,27 @@ public class ShowdownHelper extends Helper {
 		return mapInfo;
 	}
 	
+	/**
+	 * Reads the state of both sides of the battle in a single script call: every Pokemon's status, HP,
+	 * boosts, item, ability, moves and volatiles, which are active or fainted, the turn and whether the
+	 * battle is over. Reading everything a turn needs from one snapshot is much faster than calling
+	 * the functions above for each Pokemon, each of which goes to the page (and usually looks up
+	 * the opponent's name) again.
+	 * @return BattleSnapshot - state when it was read, or null if there is no battle or it couldn't be read.
+	 */
+	public BattleSnapshot getBattleSnapshot() {
+		String json = (String)javascript(BattleSnapshot.SCRIPT);
+		if (json == null) {
+			return null;
+		}
+		try {
+			return new BattleSnapshot(json);
+		}
+		catch (JSONException e) {
+			return null;
+		}
+	}
+	
 	/**
 	 * Returns the current status of the Pokemon.<br>
 	 * <b>NOTE</b> It is much more efficient to use the <code>slot</code> parameterised version of this
@@ -665,10 +895,7 @@ public class ShowdownHelper extends Helper {
 	 */
 	public boolean hasVolatile(String pokemon, String owner, String _volatile) {
 		int slot = getSlotForSpecies(pokemon, owner);
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		return (Boolean)javascript("var p=curRoom.battle[arguments[0]].pokemon[arguments[1]]; if (p!=null) return p.hasVolatile(arguments[2]);", side, slot, _volatile);
 	}
 	
@@ -683,10 +910,7 @@ public class ShowdownHelper extends Helper {
 	 * @return true if and only if the specified volatile is present.
 	 */
 	public boolean hasVolatile(int slot, String owner, String _volatile) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		return (Boolean)javascript("var p=curRoom.battle[arguments[0]].pokemon[arguments[1]]; if (p!=null) return p.hasVolatile(arguments[2]);", side, slot, _volatile);
 	}
 	
@@ -787,10 +1011,7 @@ public class ShowdownHelper extends Helper {
 	 * @return Double - returns a percentage (0-100).
 	 */
 	public double getHPPercent(int slot, String owner) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		return (Double)javascript(
 				"var p=curRoom.battle[arguments[0]].pokemon[arguments[1]];" +
 				"if (!p || p.maxhp == 0) return 0;" +
@@ -805,10 +1026,7 @@ public class ShowdownHelper extends Helper {
 	 * -6 <= <code>boost</code> <= 6.
 	 */
 	public Map<String,Integer> getBoosts(String owner) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		Map<String,Integer> boosts = new HashMap<String,Integer>();
 		String jsonBoosts = (String)javascript("return JSON.stringify(curRoom.battle[arguments[0]].active[0].boosts);", side);
 		try {
@@ -877,11 +1095,8 @@ public class ShowdownHelper extends Helper {
 	 * It only returns correctly if the target Pokemon has <b>only one possible ability.</b>
 	 */
 	public String getAbility(int slot, String owner, boolean getShortName) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
-		return (String)javascript(
+		String side = getSide(owner);
+		String ability = (String)javascript(
 			"var pokeObj = curRoom.battle[arguments[0]].pokemon[arguments[1]];" +
 			"var ability = pokeObj.ability;" +
 			"if (ability == \"\")" +
@@ -891,6 +1106,18 @@ public class ShowdownHelper extends Helper {
 			"else" +
 			"	return Tools.getAbility(ability).name;"
 		, side, slot, getShortName);
+		return getShortName ? SymbolTable.ABILITIES.intern(ability) : ability;
+	}
+	
+	/**
+	 * Returns the ability of the specified Pokemon.
+	 * @param slot The slot of the Pokemon [0-5]
+	 * @param owner Which team the Pokemon is on
+	 * @return <code>SymbolTable.ABILITIES</code> symbol, or <code>SymbolTable.NONE</code> if no ability found.
+	 * @see ShowdownHelper#getAbility(int, String, boolean)
+	 */
+	public int getAbilitySymbol(int slot, String owner) {
+		return SymbolTable.ABILITIES.symbol(getAbility(slot, owner, true));
 	}
 	
 	/**
@@ -936,11 +1163,8 @@ public class ShowdownHelper extends Helper {
 	 * @return Item name, or null if no item.
 	 */
 	public String getItem(int slot, String owner, boolean getShortName) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
-		return (String)javascript(
+		String side = getSide(owner);
+		String item = (String)javascript(
 			"var pokeObj = curRoom.battle[arguments[0]].pokemon[arguments[1]];" +
 			"var item = pokeObj.item;" +
 			"if (item == null || item == \"\")" +
@@ -950,6 +1174,17 @@ public class ShowdownHelper extends Helper {
 			"else" +
 			"	return Tools.getItem(item).name;"
 		, side, slot, getShortName);
+		return getShortName ? SymbolTable.ITEMS.intern(item) : item;
+	}
+	
+	/**
+	 * Returns the item held by the specified Pokemon.
+	 * @param slot The slot that the Pokemon is in. [0-5]
+	 * @param owner Which team the Pokemon is on
+	 * @return <code>SymbolTable.ITEMS</code> symbol, or <code>SymbolTable.NONE</code> if no item.
+	 */
+	public int getItemSymbol(int slot, String owner) {
+		return SymbolTable.ITEMS.symbol(getItem(slot, owner, true));
 	}
 	
 	/**
@@ -999,13 +1234,37 @@ public class ShowdownHelper extends Helper {
 	/**
 	 * Waits until the battle log contains the specified text (up to 5 minutes)
 	 * @param message String to wait for.
+	 * @param ignoreChats Set to true to ignore player chat messages.
+	 */
+	public void waitForBattleLogContains(String message, boolean ignoreChats) {
+		LogWatcher.Trigger trigger = logWatcher.watch(message, ignoreChats);
+		try {
+			waitForBattleLogTrigger(300, trigger);
+		}
+		finally {
+			logWatcher.unwatch(trigger);
+		}
+	}
+	
+	/**
+	 * Waits until any of the specified triggers fires, refreshing the battle log as it waits.
+	 * Only newly received log text is scanned each time, for all the triggers at once.
+	 * @param timeOutInSeconds How long to wait before throwing a TimeoutException.
+	 * @param triggers Triggers from <code>getLogWatcher().watch(...)</code>
+	 * @return The first of <code>triggers</code> which has fired.
 	 */
-	public void waitForBattleLogContains(final String message, final boolean ignoreChats) {
-		(new WebDriverWait(driver, 300)).until(new ExpectedCondition<Boolean>() {
-           public Boolean apply(WebDriver d) {
-               return battlelog.contains(message, ignoreChats);
-           }
-       });
+	public LogWatcher.Trigger waitForBattleLogTrigger(long timeOutInSeconds, final LogWatcher.Trigger... triggers) {
+		return (new WebDriverWait(driver, timeOutInSeconds)).until(new ExpectedCondition<LogWatcher.Trigger>() {
+			public LogWatcher.Trigger apply(WebDriver d) {
+				updateBattleLog();
+				for (LogWatcher.Trigger trigger : triggers) {
+					if (trigger.isTriggered()) {
+						return trigger;
+					}
+				}
+				return null;
+			}
+		});
 	}
 	
 	/**
@@ -1016,10 +1275,7 @@ public class ShowdownHelper extends Helper {
 	 * @return String - Pokemon name, empty string on failure.
 	 */
 	public String getCurrentPokemon(String owner, boolean resolveNickname) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		String pokeField = "name";
 		if (resolveNickname) {
 			pokeField = "species";
@@ -1062,16 +1318,27 @@ public class ShowdownHelper extends Helper {
 		return BattleLog.substringToFirst(s, startIndex, stop);
 	}
 	
+	/**
+	 * Replaces each name in the list with the table's shared String for it, so the names
+	 * returned from the page aren't kept as copies.
+	 */
+	private static List<String> intern(List<String> names, SymbolTable table) {
+		if (names == null) {
+			return null;
+		}
+		for (int i = 0; i < names.size(); ++i) {
+			names.set(i, table.intern(names.get(i)));
+		}
+		return names;
+	}
+	
 	/**
 	 * Returns species names of Pokemon on the specified team.
 	 * @param owner Name of team's owner
 	 * @return String List - Pokemon species names, or empty list on failure.
 	 */
 	public List<String> getTeam(String owner) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		@SuppressWarnings("unchecked")
 		List<String> team = (List<String>)javascript(
 			"var pokes = []; var pokeObjs = curRoom.battle[arguments[0]].pokemon; " +
@@ -1080,7 +1347,17 @@ public class ShowdownHelper extends Helper {
 			"}" +
 			"return pokes;"
 		, side);
-		return team;
+		return intern(team, SymbolTable.SPECIES);
+	}
+	
+	/**
+	 * Returns the species of Pokemon on the specified team.
+	 * @param owner Name of team's owner
+	 * @return int Array - <code>SymbolTable.SPECIES</code> symbols, or empty array on failure.
+	 */
+	public int[] getTeamSymbols(String owner) {
+		List<String> team = getTeam(owner);
+		return (team == null) ? new int[0] : SymbolTable.SPECIES.symbols(team);
 	}
 	
 	/**
@@ -1089,10 +1366,7 @@ public class ShowdownHelper extends Helper {
 	 * @return String List - Pokemon species names, or empty list on failure.
 	 */
 	public List<String> getAliveTeam(String owner) {
-		String side = "mySide";
-		if (owner.equals(getOpponentName())) {
-			side = "yourSide";
-		}
+		String side = getSide(owner);
 		@SuppressWarnings("unchecked")
 		List<String> team = (List<String>)javascript(
 			"var pokes = []; var pokeObjs = curRoom.battle[arguments[0]].pokemon; " +
@@ -1102,7 +1376,7 @@ public class ShowdownHelper extends Helper {
 			"}" +
 			"return pokes;"
 		, side);
-		return team;
+		return intern(team, SymbolTable.SPECIES);
 	}
 	
 	/**
@@ -1116,15 +1390,165 @@ public class ShowdownHelper extends Helper {
 		return team;
 	}
 	
+	/**
+	 * Script fetching the battle log nodes after the first arguments[0] as HTML, skipping chat
+	 * messages unless arguments[2] is true. If the log element isn't tagged with the id arguments[1]
+	 * (or has fewer nodes), it is a new log: it is tagged, and every node is fetched.
+	 * Returns [whether it's a new log, number of nodes in the log, HTML], or null if there's no log.
+	 */
+	private static final String LOG_FETCH_SCRIPT =
+		"var inner = document.querySelector('div.battle-log > div.inner');" +
+		"if (inner == null) return null;" +
+		"var nodes = inner.childNodes;" +
+		"var from = arguments[0];" +
+		"var newLog = (inner.geniusectLogId !== arguments[1] || from > nodes.length);" +
+		"if (newLog) {" +
+		"	inner.geniusectLogId = arguments[1];" +
+		"	from = 0;" +
+		"}" +
+		"var html = [];" +
+		"var holder = document.createElement('div');" +
+		"for (var i = from; i < nodes.length; ++i) {" +
+		"	var node = nodes[i];" +
+		"	if (node.nodeType == 1) {" +
+		"		if (!arguments[2] && node.tagName == 'DIV' && node.className == 'chat')" +
+		"			continue;" +
+		"		html.push(node.outerHTML);" +
+		"	}" +
+		"	else {" +
+		"		holder.appendChild(node.cloneNode(true));" +
+		"		html.push(holder.innerHTML);" +
+		"		holder.removeChild(holder.firstChild);" +
+		"	}" +
+		"}" +
+		"return [newLog, nodes.length, html.join('')];";
+	
+	/**
+	 * Sets whether chat messages are fetched into the battle log. Leaving them out, so they are
+	 * dropped in the browser and never sent to us, makes updating the log cheaper in chatty battles.
+	 * Takes effect from the next battle log update; messages already fetched stay in the log.
+	 * @param fetch If false, <code>BattleLog</code> won't contain chat messages. True by default.
+	 */
+	public void setFetchChats(boolean fetch) {
+		fetchChats = fetch;
+	}
+	
 	public void initBattleLog() {
-		battlelog = new BattleLog(driver.findElement(By.cssSelector("div.battle-log > div.inner")).getAttribute("innerHTML"));
+		battlelog = new BattleLog("");
+		logId = null;
+		fetchBattleLog();
 	}
 	
 	public void updateBattleLog() {
-		battlelog.setLogText(driver.findElement(By.cssSelector("div.battle-log > div.inner")).getAttribute("innerHTML"));
+		if (battlelog == null) {
+			initBattleLog();
+		}
+		else {
+			fetchBattleLog();
+		}
+		logWatcher.update(battlelog);
+		eventStream.update(battlelog);
+	}
+	
+	/**
+	 * Brings battlelog up to date with the page, fetching only the log nodes added since the last fetch.
+	 */
+	private void fetchBattleLog() {
+		if (logId == null) {
+			// Unique for this helper and log, so a log we fetched before is never mistaken for this one
+			logId = Integer.toHexString(System.identityHashCode(battlelog)) + ":" + System.nanoTime();
+			logNodesRead = 0;
+		}
+		List<?> fetched = (List<?>)javascript(LOG_FETCH_SCRIPT, logNodesRead, logId, fetchChats);
+		if (fetched == null) {
+			throw new NoSuchElementException("Could not find the battle log");
+		}
+		boolean newLog = (Boolean)fetched.get(0);
+		logNodesRead = ((Long)fetched.get(1)).intValue();
+		String html = (String)fetched.get(2);
+		if (newLog) {
+			battlelog.setLogText(html);
+		}
+		else {
+			battlelog.appendLogText(html);
+		}
+	}
+	
+	/**
+	 * Script capturing the battle protocol the client receives, before it is rendered to the log.
+	 * The first time it runs for a battle it wraps the battle's add function (which every protocol
+	 * message goes through) to keep each message in the page, starting with those already received.
+	 * Returns [whether capturing just started, the messages kept since the last run, one per line],
+	 * or null if there is no battle.
+	 */
+	private static final String PROTOCOL_CAPTURE_SCRIPT =
+		"var b = curRoom.battle;" +
+		"if (!b) return null;" +
+		"var started = false;" +
+		"if (!b.geniusectProtocol) {" +
+		"	started = true;" +
+		"	b.geniusectProtocol = [];" +
+		"	var queue = b.activityQueue || [];" +
+		"	for (var i = 0; i < queue.length; ++i) {" +
+		"		if (typeof queue[i] == 'string')" +
+		"			b.geniusectProtocol.push(queue[i]);" +
+		"	}" +
+		"	var add = b.add;" +
+		"	b.add = function(command) {" +
+		"		if (typeof command == 'string')" +
+		"			b.geniusectProtocol.push(command);" +
+		"		return add.apply(this, arguments);" +
+		"	};" +
+		"}" +
+		"var lines = b.geniusectProtocol;" +
+		"b.geniusectProtocol = [];" +
+		"return [started, (lines.length == 0) ? '' : lines.join('\\n') + '\\n'];";
+	
+	/**
+	 * Reads the battle events received since the last call straight from the Showdown protocol,
+	 * as an alternative to the battle log: the messages are much smaller than the log HTML and
+	 * quicker to interpret. The first call in a battle starts capturing the protocol in the page,
+	 * and also returns the events received before then.
+	 * @return TIEvent List - the events, in order, as <code>TurnInfo</code> would have them
+	 * (see <code>ProtocolParser</code>). Empty if there is no battle.
+	 */
+	public List<TIEvent> readProtocolEvents() {
+		List<TIEvent> events = new ArrayList<TIEvent>();
+		List<?> read = (List<?>)javascript(PROTOCOL_CAPTURE_SCRIPT);
+		if (read == null) {
+			return events;
+		}
+		if ((Boolean)read.get(0) || protocolParser == null) {
+			protocolParser = new ProtocolParser(getUserName());
+		}
+		protocolParser.append((String)read.get(1), events);
+		return events;
+	}
+	
+	/**
+	 * Gets the parser <code>readProtocolEvents</code> uses, for the turn, players and winner it has read.
+	 * @return ProtocolParser - or null if the protocol hasn't been read this battle.
+	 */
+	public ProtocolParser getProtocolParser() {
+		return protocolParser;
 	}
 	
 	public BattleLog getBattleLog() {
 		return battlelog;
 	}
+	
+	/**
+	 * Gets the watcher which checks the battle log for trigger strings whenever it is updated.
+	 * Watch for several strings at once and wait for them with <code>waitForBattleLogTrigger</code>.
+	 */
+	public LogWatcher getLogWatcher() {
+		return logWatcher;
+	}
+	
+	/**
+	 * Gets the stream which sends listeners each battle event as soon as <code>updateBattleLog</code> receives it.
+	 */
+	public EventStream getEventStream() {
+		return eventStream;
+	}
 }
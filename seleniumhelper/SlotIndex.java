@@ -0,0 +1,89 @@
+package seleniumhelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The species and nickname of the Pokemon in each slot of both teams, read from the page in one go.
+ * Kept for the battle by <code>BattleContext</code>, and read again when a Pokemon is sent out or dragged out,
+ * or a name can't be found, as that is when a team can change (eg the opponent reveals a Pokemon).
+ * As the battle log may be behind the page, each slot found is checked against the page with <code>CHECK_SCRIPT</code>,
+ * which only reads the one name.
+ * @author burse
+ */
+final class SlotIndex {
+	
+	/**
+	 * Script returning the species and nicknames of mySide and then yourSide, as four lists in slot order.
+	 */
+	static final String SCRIPT =
+		"var b = curRoom.battle;" +
+		"function names(s, field) {" +
+		"	var names = [];" +
+		"	for (var i = 0; i < s.pokemon.length; ++i)" +
+		"		names.push(s.pokemon[i][field]);" +
+		"	return names;" +
+		"}" +
+		"return [names(b.mySide, 'species'), names(b.mySide, 'name'), names(b.yourSide, 'species'), names(b.yourSide, 'name')];";
+	
+	/**
+	 * Script returning one field (see <code>field</code>) of the Pokemon in a slot, given the side, slot and field.
+	 */
+	static final String CHECK_SCRIPT =
+		"var p = curRoom.battle[arguments[0]].pokemon[arguments[1]];" +
+		"return p ? p[arguments[2]] : null;";
+	
+	// BattleLog.getSwitchInCount() when the index was read
+	final int switchIns;
+	
+	private final List<String> mySpecies;
+	private final List<String> myNicknames;
+	private final List<String> yourSpecies;
+	private final List<String> yourNicknames;
+	
+	/**
+	 * @param read What <code>SCRIPT</code> returned.
+	 * @param switchIns <code>BattleLog.getSwitchInCount()</code> when it was run.
+	 */
+	SlotIndex(List<?> read, int switchIns) {
+		this.switchIns = switchIns;
+		mySpecies = names(read, 0);
+		myNicknames = names(read, 1);
+		yourSpecies = names(read, 2);
+		yourNicknames = names(read, 3);
+	}
+	
+	/**
+	 * Finds the slot of a Pokemon.
+	 * @param side "mySide" or "yourSide".
+	 * @param name The Pokemon's species name, or nickname if <code>byNickname</code> is set.
+	 * @return Integer - 0-5, slot. -1 if it isn't in the index.
+	 */
+	int slot(String side, String name, boolean byNickname) {
+		List<String> names;
+		if (BattleContext.YOUR_SIDE.equals(side)) {
+			names = byNickname ? yourNicknames : yourSpecies;
+		}
+		else {
+			names = byNickname ? myNicknames : mySpecies;
+		}
+		return names.indexOf(name);
+	}
+	
+	/**
+	 * @return The field of a Pokemon in <code>curRoom.battle</code> with its nickname or species name.
+	 */
+	static String field(boolean byNickname) {
+		return byNickname ? "name" : "species";
+	}
+	
+	private static List<String> names(List<?> read, int list) {
+		List<String> names = new ArrayList<String>(6);
+		if (read != null && list < read.size() && read.get(list) instanceof List) {
+			for (Object name : (List<?>)read.get(list)) {
+				names.add((String)name);
+			}
+		}
+		return names;
+	}
+}
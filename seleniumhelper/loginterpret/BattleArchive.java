@@ -0,0 +1,365 @@
+package seleniumhelper.loginterpret;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads an archive of many battle logs saved one after another in the same file
+ * (eg logs dumped with <code>getLogText()</code>, battle log HTML, or a mix of both).<br/>
+ * Battles are read lazily as the archive is iterated, one BattleLog at a time, so archives
+ * bigger than the heap can be processed. Only the battle being read is kept in memory: the archive
+ * lets go of the battle it last returned before reading the next, so it can be collected
+ * as soon as the caller is done with it.<br/>
+ * A new battle starts where a turn 0 announcement ("Format: ...", "... Clause: ...", or
+ * "Battle between ... started!") follows a turn heading or "... won the battle!".<br/>
+ * The archive can only be iterated once. Close it when done.
+ * @author burse
+ */
+public class BattleArchive implements Iterable<BattleLog>, Closeable {
+	
+	private static final String CLAUSE_ANNOUNCEMENT = "Clause: ";
+	
+	private final MappedLogReader reader;
+	
+	// Finds the lines of the archive, to look for the start of each battle
+	private final LogScanner scanner = new LogScanner(true);
+	
+	// Archive text read but not yet given to a battle
+	private final StringBuilder buffer = new StringBuilder(2 * MappedLogReader.WINDOW_SIZE);
+	
+	// Offset in buffer up to which nodes have been checked for the start of a battle
+	private int scanned;
+	
+	// Whether the whole archive has been read into buffer
+	private boolean endOfArchive;
+	
+	// Battle currently being read, and whether it has had a turn or a winner yet
+	private BattleLog reading;
+	private boolean readingStarted;
+	
+	// Complete battle waiting to be returned, or null if the next one hasn't been read yet
+	private BattleLog pending;
+	
+	// Whether battles are collected as text, for the caller to interpret (see nextBattleText),
+	// and the text of the battle being read and of the complete battle waiting in that case
+	private final boolean textOnly;
+	private StringBuilder readingText;
+	private boolean readingHasText;
+	private CharSequence pendingText;
+	
+	// Whether the whole archive has been given to battles
+	private boolean finished;
+	
+	// Battle most recently returned, until the next is read, and the turn the turn iterator is up to in it
+	private BattleLog battle;
+	private int turn;
+	
+	private int battleCount;
+	private boolean iterated;
+	
+	/**
+	 * Opens a UTF-8 archive of battle logs.
+	 * @see BattleArchive#BattleArchive(File, Charset)
+	 */
+	public BattleArchive(File file) throws IOException {
+		this(file, Charset.forName("UTF-8"));
+	}
+	
+	/**
+	 * Opens an archive of battle logs.
+	 * @param file The archive to read. It is memory mapped and decoded a window at a time.
+	 * @param charset The archive's character encoding.
+	 * @throws IOException If the archive can't be opened.
+	 */
+	public BattleArchive(File file, Charset charset) throws IOException {
+		this(file, charset, false);
+	}
+	
+	/**
+	 * Opens an archive of battle logs.
+	 * @param textOnly If true, battles are only split apart, and read with <code>nextBattleText</code>
+	 * so they can be interpreted elsewhere (eg on other threads).
+	 */
+	BattleArchive(File file, Charset charset, boolean textOnly) throws IOException {
+		reader = new MappedLogReader(file, charset);
+		this.textOnly = textOnly;
+		startBattle();
+	}
+	
+	/**
+	 * Gets an iterator over every battle in the archive, in order.
+	 * Reading errors are thrown as IllegalStateException, with the IOException as the cause.
+	 * @return BattleLog Iterator - can only be requested once.
+	 */
+	public Iterator<BattleLog> iterator() {
+		checkNotIterated();
+		return battles();
+	}
+	
+	private Iterator<BattleLog> battles() {
+		return new Iterator<BattleLog>() {
+			public boolean hasNext() {
+				return readBattle();
+			}
+			
+			public BattleLog next() {
+				if (!readBattle()) {
+					throw new NoSuchElementException();
+				}
+				battle = pending;
+				pending = null;
+				turn = 0;
+				++battleCount;
+				return battle;
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/**
+	 * Gets an iterator over every turn of every battle in the archive, in order.
+	 * Turn 0 (the format, team, etc. announcements) is included for each battle.
+	 * The battle and turn number the last TurnInfo came from are given by
+	 * <code>getBattle()</code> and <code>getTurn()</code>.
+	 * @return TurnInfo Iterable - can only be iterated once, instead of <code>iterator()</code>.
+	 */
+	public Iterable<TurnInfo> turns() {
+		checkNotIterated();
+		final Iterator<BattleLog> battles = battles();
+		return new Iterable<TurnInfo>() {
+			public Iterator<TurnInfo> iterator() {
+				return new Iterator<TurnInfo>() {
+					// Position in the current battle of the next turn to return
+					private int nextTurn;
+					
+					public boolean hasNext() {
+						while (battle == null || nextTurn > battle.getTurnCount()) {
+							if (!battles.hasNext()) {
+								return false;
+							}
+							battles.next();
+							nextTurn = 0;
+						}
+						return true;
+					}
+					
+					public TurnInfo next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						turn = battle.getTurnNumber(nextTurn++);
+						return battle.getTurnInfo(turn);
+					}
+					
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * @return The battle most recently returned, or null if none has been yet or the next is being looked for
+	 * (ie <code>hasNext()</code> has been called since).
+	 */
+	public BattleLog getBattle() {
+		return battle;
+	}
+	
+	/**
+	 * @return Number (see <code>BattleLog.getTurnText</code>) of the turn most recently returned by <code>turns()</code>.
+	 */
+	public int getTurn() {
+		return turn;
+	}
+	
+	/**
+	 * @return Number of battles returned so far.
+	 */
+	public int getBattleCount() {
+		return battleCount;
+	}
+	
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+	/**
+	 * Reads the text of the next battle, without interpreting it. Only for archives opened text only.
+	 * @return The battle's log HTML or text, or null if there are no more battles.
+	 * @throws IOException If the archive can't be read.
+	 */
+	CharSequence nextBattleText() throws IOException {
+		checkTextOnly(true);
+		try {
+			if (!readBattle()) {
+				return null;
+			}
+		}
+		catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+		CharSequence text = pendingText;
+		pendingText = null;
+		++battleCount;
+		return text;
+	}
+	
+	private void checkTextOnly(boolean expected) {
+		if (textOnly != expected) {
+			throw new IllegalStateException(textOnly ? "Battles are only read as text" : "Battles are read as BattleLogs");
+		}
+	}
+	
+	private void checkNotIterated() {
+		checkTextOnly(false);
+		if (iterated) {
+			throw new IllegalStateException("A BattleArchive can only be iterated once");
+		}
+		iterated = true;
+	}
+	
+	/**
+	 * Reads until the next battle is complete.
+	 * @return Whether there is a battle pending.
+	 */
+	private boolean readBattle() {
+		if (!hasPending() && !finished) {
+			// Don't keep the last battle alive while the next is read
+			battle = null;
+		}
+		try {
+			while (!hasPending() && !finished) {
+				readNodes();
+				if (hasPending()) {
+					break;
+				}
+				CharSequence window = reader.next();
+				if (window != null) {
+					buffer.append(window);
+				}
+				else if (!endOfArchive) {
+					// Finish off a last line with no line break
+					endOfArchive = true;
+					buffer.append('\n');
+				}
+				else {
+					// Whatever is left is an unclosed element; the battle keeps it as received.
+					giveToBattle(buffer.length());
+					finishBattle();
+					finished = true;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to read battle archive", e);
+		}
+		return hasPending();
+	}
+	
+	private boolean hasPending() {
+		return pending != null || pendingText != null;
+	}
+	
+	/**
+	 * Checks the complete nodes in buffer for the start of a new battle, stopping at the first one found.
+	 * Checked nodes are given to the battle being read.
+	 */
+	private void readNodes() {
+		int end;
+		while ((end = scanner.nextNode(buffer, scanned, buffer.length())) != -1) {
+			if (!scanner.hasText() || CharSequences.regionMatches(buffer, scanned, end, LogLexer.CHAT_DIV)) {
+				readingHasText |= scanner.hasText();
+				scanned = end;
+				continue;
+			}
+			CharSequence text = scanner.getText();
+			if (readingStarted && isAnnouncement(text)) {
+				end -= scanned;
+				giveToBattle(scanned);
+				finishBattle();
+				startBattle();
+			}
+			readingHasText = true;
+			if (CharSequences.regionMatches(buffer, scanned, end, LogLexer.TURN_HEADING)
+					|| (buffer.charAt(scanned) != '<' && LogLexer.isTurnLine(text))
+					|| LogLexer.endsWith(text, LogLexer.WON)) {
+				readingStarted = true;
+			}
+			scanned = end;
+			if (hasPending()) {
+				break;
+			}
+		}
+		giveToBattle(scanned);
+	}
+	
+	/**
+	 * Whether a line is one of the announcements a battle starts with.
+	 */
+	private static boolean isAnnouncement(CharSequence text) {
+		int length = text.length();
+		if (CharSequences.regionMatches(text, 0, length, LogLexer.FORMAT)) {
+			return true;
+		}
+		if (CharSequences.regionMatches(text, 0, length, LogLexer.BATTLE_BETWEEN) && LogLexer.endsWith(text, LogLexer.BATTLE_STARTED)) {
+			return true;
+		}
+		return CharSequences.indexOf(text, CLAUSE_ANNOUNCEMENT, 0, length) != -1;
+	}
+	
+	/**
+	 * Moves the start of buffer, up to <code>end</code>, into the battle being read.
+	 */
+	private void giveToBattle(int end) {
+		if (end == 0) {
+			return;
+		}
+		if (textOnly) {
+			readingText.append(buffer, 0, end);
+		}
+		else {
+			reading.interpret(buffer.subSequence(0, end));
+		}
+		buffer.delete(0, end);
+		scanned -= end;
+	}
+	
+	/**
+	 * Makes the battle being read pending, unless it has nothing in it.
+	 */
+	private void finishBattle() {
+		if (textOnly) {
+			if (readingHasText) {
+				pendingText = readingText;
+			}
+		}
+		else if (reading.getTokenCount() != 0) {
+			// Read in many pieces, so published once it's complete
+			reading.publish();
+			pending = reading;
+		}
+	}
+	
+	private void startBattle() {
+		if (textOnly) {
+			readingText = new StringBuilder();
+		}
+		else {
+			reading = new BattleLog("");
+		}
+		readingStarted = false;
+		readingHasText = false;
+	}
+}
@@ -1,51 +1,375 @@
 package seleniumhelper.loginterpret;
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.html.dom.HTMLDocumentImpl;
-import org.cyberneko.html.parsers.DOMFragmentParser;
-import org.w3c.dom.DocumentFragment;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.html.HTMLDocument;
-import org.xml.sax.InputSource;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import seleniumhelper.loginterpret.events.EventCursor;
 
 /**
  * Pokemon Showdown battle log interpreter. Provides functions to assist in analysing
  * and reading a battle log.<br/>
  * Initialise it with a String - the battle log HTML (div.battle-log > div.inner).<br/>
  * Update it as the battle updates with <code>setLogText</code><br/>
- * Note this can also be used on arbitrary strings, for example, a log saved in a text file.
+ * Note this can also be used on arbitrary strings, for example, a log saved in a text file.<br/>
+ * The log text getters (<code>getLogText</code>, <code>getTurnText</code>, <code>contains</code> etc.) read the
+ * latest <code>BattleLogSnapshot</code>, so other threads may call them while the log is updated.
+ * Everything else should be called from the thread updating the log.
  * @author burse
  */
 public class BattleLog {
 	
 	// Battle log text stripped of HTML and chat messages
-	private String battleLogText;
+	private CharStore battleLogText;
+	
+	// Text of chat messages, one per line
+	private CharStore chatText;
+	
+	// unstripped HTML, as received
+	private CharStore battleLogHTML;
+	
+	// HTML with chat messages stripped, up to parsedLength
+	private CharStore strippedLogHTML;
+	
+	// Offset into battleLogHTML up to which complete elements have been interpreted.
+	// Anything past this is an element still being received.
+	private int parsedLength;
+	
+	// Start offsets of each turn in strippedLogHTML, battleLogText, battleLogHTML and chatText, indexed by
+	// the turn's position in the log. Turn 0 (team, format, etc. announcements) always starts at 0.
+	private int[] turnHTMLOffsets;
+	private int[] turnTextOffsets;
+	private int[] turnRawOffsets;
+	private int[] turnChatOffsets;
+	
+	// Number in each turn's heading, by position in the log as above. Turns are looked up by these numbers,
+	// which only match the positions if the log starts at turn 1.
+	private int[] turnNumbers;
+	
+	// Number of "Turn x" headings seen so far
+	private int turnCount;
+	
+	// Turn number in the latest "Turn x" heading
+	private int currentTurn;
+	
+	// Every line of the log, classified. Token text offsets are into battleLogText,
+	// or chatText for CHAT tokens.
+	private LogTokens tokens;
+	
+	// Index of the first BATTLE_START and FORMAT tokens, or -1 if there aren't any yet
+	private int battleStartToken;
+	private int formatToken;
+	
+	// Names of the players in this battle, as symbols
+	private SymbolTable players;
+	
+	// Pokemon sent out by each player, by player name, and the number sent or dragged out
+	private Map<String, SwitchTimeline> switchTimelines;
+	private int switchInCount;
+	
+	// Every Pokemon name seen in the battle, parsed
+	private PokemonNameCache pokemonNames = new PokemonNameCache();
+	
+	private LogLexer lexer;
+	
+	// TurnInfo of recently requested turns
+	private TurnCache turnCache;
 	
-	// unstripped HTML
-	private String battleLogHTML; 
+	// The latest snapshot of the log, which the text getters read so they can be called from any thread
+	private final AtomicReference<BattleLogSnapshot> snapshot = new AtomicReference<BattleLogSnapshot>();
+	
+	// Version of the latest snapshot, and whether the log has changed since it was taken
+	private long version;
+	private boolean changed;
+	
+	// Characters at each end of the previous log HTML compared by setLogText
+	private static final int PREFIX_CHECK_LENGTH = 256;
+	
+	/**
+	 * Number of turns whose TurnInfo is cached by default.
+	 */
+	public static final int DEFAULT_TURN_CACHE_SIZE = 64;
 	
 	/**
 	 * Creates a new battle log interpreter.
 	 * @param logHTML HTML of the battle log element (css=div.battle-log > div.inner).
 	 */
 	public BattleLog(String logHTML) {
+		this(logHTML, DEFAULT_TURN_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates a new battle log interpreter.
+	 * @param logHTML HTML of the battle log element (css=div.battle-log > div.inner).
+	 * @param turnCacheSize The most turns to keep TurnInfo cached for.
+	 */
+	public BattleLog(String logHTML, int turnCacheSize) {
+		lexer = new LogLexer();
+		tokens = new LogTokens();
+		turnCache = new TurnCache(turnCacheSize);
+		reset();
 		setLogText(logHTML);
 	}
 	
+	/**
+	 * Creates a battle log interpreter for a log saved in a UTF-8 file.
+	 * @see BattleLog#fromFile(File, Charset)
+	 */
+	public static BattleLog fromFile(File file) throws IOException {
+		return fromFile(file, Charset.forName("UTF-8"));
+	}
+	
+	/**
+	 * Creates a battle log interpreter for a log saved in a file, eg. the battle log HTML or a
+	 * log dumped with <code>getLogText()</code>.<br/>
+	 * The file is memory mapped and parsed a window at a time as it is decoded, so loading takes
+	 * linear time and no memory beyond what the BattleLog itself keeps.
+	 * @param file The file to load.
+	 * @param charset The file's character encoding.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static BattleLog fromFile(File file, Charset charset) throws IOException {
+		BattleLog log = new BattleLog("");
+		MappedLogReader reader = new MappedLogReader(file, charset);
+		try {
+			log.battleLogHTML.ensureCapacity((int) Math.min(reader.size(), Integer.MAX_VALUE - 8));
+			CharSequence window;
+			while ((window = reader.next()) != null) {
+				log.interpret(window);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		if (log.parsedLength < log.battleLogHTML.length()) {
+			// Finish off a last line with no line break, as no more text will come
+			log.interpret("\n");
+		}
+		log.publish();
+		return log;
+	}
+	
+	/**
+	 * Sets the HTML of the whole battle log.<br/>
+	 * If the previous log HTML is a prefix of <code>logHTML</code> (the usual case, as the
+	 * battle log only ever grows) only the new content is interpreted.
+	 * Otherwise the log is interpreted again from scratch.<br/>
+	 * So that updates don't get slower as the battle goes on, only the start and end of the previous
+	 * HTML are compared; a log changed only in the middle isn't noticed. Callers which know what was
+	 * added, like <code>ShowdownHelper.updateBattleLog</code>, should use <code>appendLogText</code> instead.
+	 * @param logHTML HTML of the battle log element (css=div.battle-log > div.inner).
+	 */
 	public void setLogText(String logHTML) {
-		battleLogHTML = logHTML;
-		battleLogText = stripHTML(getLogHTML(true));
+		if (!startsWith(logHTML, battleLogHTML)) {
+			reset();
+		}
+		interpret(logHTML.substring(battleLogHTML.length()));
+		publish();
+	}
+	
+	/**
+	 * Appends newly received HTML to the end of the battle log.
+	 * Elements which are not yet complete are held back until the rest of them is appended.
+	 * @param newHTML HTML to add to the end of the log.
+	 */
+	public void appendLogText(CharSequence newHTML) {
+		interpret(newHTML);
+		publish();
+	}
+	
+	/**
+	 * Appends HTML to the log and interprets the elements it completes, without publishing a snapshot,
+	 * so a log read in many pieces can be published once at the end.
+	 */
+	void interpret(CharSequence newHTML) {
+		if (newHTML.length() == 0) {
+			return;
+		}
+		battleLogHTML.append(newHTML);
+		changed = true;
+		
+		int openTurn = currentTurn;
+		int start = parsedLength;
+		int next;
+		while ((next = lexer.next(battleLogHTML, parsedLength, battleLogHTML.length())) != -1) {
+			interpretNode(parsedLength, next);
+			parsedLength = next;
+		}
+		if (parsedLength != start) {
+			// Only the open turn can change; completed turns stay cached.
+			turnCache.invalidate(openTurn);
+		}
+	}
+	
+	/**
+	 * Publishes a snapshot of the log as it is now, if it has changed since the last one.
+	 * The snapshot shares the log's text and turn offsets, which are only ever appended to, so nothing is copied.
+	 */
+	void publish() {
+		if (!changed) {
+			return;
+		}
+		snapshot.set(new BattleLogSnapshot(++version,
+				new BattleLogSnapshot.Text(battleLogText, turnTextOffsets),
+				new BattleLogSnapshot.Text(strippedLogHTML, turnHTMLOffsets),
+				new BattleLogSnapshot.Text(battleLogHTML, turnRawOffsets),
+				new BattleLogSnapshot.Text(chatText, turnChatOffsets),
+				turnNumbers, turnCount, currentTurn));
+		changed = false;
+	}
+	
+	/**
+	 * Gets a snapshot of the log as it was after the latest update. Snapshots never change,
+	 * so any thread can read one while the battle thread goes on updating the log.
+	 * @return BattleLogSnapshot - the latest snapshot.
+	 */
+	public BattleLogSnapshot getSnapshot() {
+		return snapshot.get();
+	}
+	
+	/**
+	 * Interprets the top-level node in battleLogHTML between start and end,
+	 * which the lexer has just read.
+	 */
+	private void interpretNode(int start, int end) {
+		LogTokenType type = lexer.getType();
+		if (type == LogTokenType.CHAT) {
+			int textStart = chatText.length();
+			chatText.append(lexer.getText()).append('\n');
+			tokens.add(type, start, end, textStart, chatText.length() - 1, 0);
+			return;
+		}
+		
+		if (type == LogTokenType.TURN) {
+			// The heading is the start of the turn's HTML
+			startTurn(lexer.getArgument(), start);
+		}
+		strippedLogHTML.append(battleLogHTML, start, end);
+		if (type == null) {
+			return;
+		}
+		if (type == LogTokenType.BATTLE_START && battleStartToken == -1) {
+			battleStartToken = tokens.size();
+		}
+		else if (type == LogTokenType.FORMAT && formatToken == -1) {
+			formatToken = tokens.size();
+		}
+		int textStart = battleLogText.length();
+		battleLogText.append(lexer.getText()).append('\n');
+		tokens.add(type, start, end, textStart, battleLogText.length() - 1, lexer.getArgument());
+		if (type == LogTokenType.SWITCH) {
+			recordSwitchIn(textStart, lexer.getArgument(), battleLogText.length() - 1);
+		}
+		else if (type == LogTokenType.OTHER && LogLexer.endsWith(lexer.getText(), LogLexer.DRAGGED_OUT)) {
+			// Dragged in by eg Roar or Whirlwind; the line doesn't say whose, so it only counts
+			++switchInCount;
+		}
+	}
+	
+	/**
+	 * Adds the "(owner) sent out (Pokemon)!" line in battleLogText to its owner's timeline.
+	 * @param textStart Start of the line
+	 * @param sentOut Offset of " sent out " in the line
+	 * @param textEnd End of the line
+	 */
+	private void recordSwitchIn(int textStart, int sentOut, int textEnd) {
+		String owner = players.intern(battleLogText, textStart, textStart + sentOut);
+		PokemonName name = pokemonNames.get(battleLogText, textStart + sentOut + LogLexer.SENT_OUT.length(), textEnd - 1);
+		SwitchTimeline timeline = switchTimelines.get(owner);
+		if (timeline == null) {
+			timeline = new SwitchTimeline();
+			switchTimelines.put(owner, timeline);
+		}
+		timeline.add(new SwitchIn(currentTurn, name.nickname, name.species));
+		++switchInCount;
+	}
+	
+	/**
+	 * Records the start of a new turn at the current end of the log.
+	 * @param turn The number in the turn's heading
+	 * @param rawStart Offset in battleLogHTML of the heading
+	 */
+	private void startTurn(int turn, int rawStart) {
+		++turnCount;
+		if (turnCount == turnHTMLOffsets.length) {
+			turnHTMLOffsets = Arrays.copyOf(turnHTMLOffsets, turnCount * 2);
+			turnTextOffsets = Arrays.copyOf(turnTextOffsets, turnCount * 2);
+			turnRawOffsets = Arrays.copyOf(turnRawOffsets, turnCount * 2);
+			turnChatOffsets = Arrays.copyOf(turnChatOffsets, turnCount * 2);
+			// Earlier snapshots keep the old arrays, which they only read up to their own turn count
+			turnNumbers = Arrays.copyOf(turnNumbers, turnCount * 2);
+		}
+		turnHTMLOffsets[turnCount] = strippedLogHTML.length();
+		turnTextOffsets[turnCount] = battleLogText.length();
+		turnRawOffsets[turnCount] = rawStart;
+		turnChatOffsets[turnCount] = chatText.length();
+		turnNumbers[turnCount] = turn;
+		currentTurn = turn;
+	}
+	
+	private void reset() {
+		// New stores, as earlier snapshots go on reading the old ones
+		battleLogHTML = new CharStore();
+		strippedLogHTML = new CharStore();
+		battleLogText = new CharStore();
+		chatText = new CharStore();
+		parsedLength = 0;
+		turnHTMLOffsets = new int[64];
+		turnTextOffsets = new int[64];
+		turnRawOffsets = new int[64];
+		turnChatOffsets = new int[64];
+		turnNumbers = new int[64];
+		turnCount = 0;
+		currentTurn = 0;
+		tokens.clear();
+		battleStartToken = -1;
+		formatToken = -1;
+		players = new SymbolTable("players");
+		switchTimelines = new HashMap<String, SwitchTimeline>();
+		switchInCount = 0;
+		pokemonNames.clear();
+		lexer.reset();
+		turnCache.clear();
+		changed = true;
+	}
+	
+	/**
+	 * Whether <code>s</code> starts with <code>prefix</code>, judging only by their lengths and the first
+	 * and last <code>PREFIX_CHECK_LENGTH</code> characters of <code>prefix</code>. A new battle's log
+	 * differs from the old one's by the end of the old one, so that is enough to tell them apart.
+	 */
+	private static boolean startsWith(String s, CharSequence prefix) {
+		int length = prefix.length();
+		if (length > s.length()) {
+			return false;
+		}
+		int head = Math.min(length, PREFIX_CHECK_LENGTH);
+		int tail = Math.max(head, length - PREFIX_CHECK_LENGTH);
+		return regionEquals(s, prefix, 0, head) && regionEquals(s, prefix, tail, length);
+	}
+	
+	private static boolean regionEquals(String s, CharSequence prefix, int start, int end) {
+		for (int i = start; i < end; ++i) {
+			if (s.charAt(i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	/**
 	 * <code>(.+|.+ \\(.+\\))</code><br/>
 	 * Has 1 group - either "species name", or "nickname (species name)".
 	 * Good to put into <code>getNameFromPossibleNickname</code>
+	 * @deprecated Backtracks badly on long names with brackets in; match the whole name
+	 * and split it with <code>PokemonName.parse</code> instead.
 	 */
+	@Deprecated
 	public static String POKEMON_NAME_PATTERN = "(.+|.+ \\(.+\\))";
 	
 	/**
@@ -68,27 +392,26 @@ public class BattleLog {
 	 * @return Integer - the turn, or 0 if a turn has not been started.
 	 */
 	public int getCurrentTurn() {
-		String cTT = getCurrentTurnText();
-		if (cTT == "") {
-			return 0;
-		}
-		
-		String turnString = "";
-		Pattern p = Pattern.compile("^Turn (\\d+)$", Pattern.MULTILINE);
-		Matcher m = p.matcher(cTT);
-		if (m.find()) {
-			turnString = m.group(1);
-		}
-		else {
-			return 0;
-		}
-		
-		try {
-			return Integer.parseInt(turnString);
-		}
-		catch (Exception e) {
-			return 0;
-		}
+		return snapshot.get().getCurrentTurn();
+	}
+	
+	/**
+	 * Gets the number of turns started in the battle log.
+	 * Turns are numbered as in their headings, so this differs from <code>getCurrentTurn</code> when
+	 * the log doesn't start at turn 1. Use <code>getTurnNumber</code> to go through the turns in order.
+	 * @return Integer - number of "Turn x" headings, or 0 if a turn has not been started.
+	 */
+	public int getTurnCount() {
+		return snapshot.get().getTurnCount();
+	}
+	
+	/**
+	 * Gets the number of a turn from its position in the battle log.
+	 * @param index Position of the turn, from 0 (the announcements before the first heading) to <code>getTurnCount()</code>.
+	 * @return Integer - the number in the turn's heading, 0 for the announcements, or -1 if there is no such turn.
+	 */
+	public int getTurnNumber(int index) {
+		return snapshot.get().getTurnNumber(index);
 	}
 	
 	/**
@@ -96,7 +419,7 @@ public class BattleLog {
 	 * @return String - battle log text, including new lines, CHAT MESSAGES STRIPPED.
 	 */
 	public String getLogText() {
-		return battleLogText;
+		return snapshot.get().getLogText();
 	}
 	
 	/**
@@ -105,12 +428,7 @@ public class BattleLog {
 	 * @return String - battle log in raw HTML form.
 	 */
 	public String getLogHTML(boolean stripChats) {
-		if (!stripChats) {
-			return battleLogHTML;
-		}
-		else {
-			return battleLogHTML.replaceAll("<div class=\"chat\">.*?</div>", "");
-		}
+		return snapshot.get().getLogHTML(stripChats);
 	}
 	
 	/**
@@ -120,12 +438,49 @@ public class BattleLog {
 	 * @return True if and only if the battle log contains the string specified.
 	 */
 	public boolean contains(String s, boolean ignoreChats) {
-		if (!ignoreChats) {
-			return (getLogText().lastIndexOf(s) != -1);
-		}
-		else {
-			return (stripHTML(getLogHTML(true)).lastIndexOf(s) != -1);
-		}
+		return snapshot.get().contains(s, ignoreChats);
+	}
+	
+	/**
+	 * @return The stripped log text as it is built, for reading without copying. Replaced when the log is reset.
+	 */
+	CharSequence textBuffer() {
+		return battleLogText;
+	}
+	
+	/**
+	 * @return Chat message text as it is built, for reading without copying. Replaced when the log is reset.
+	 */
+	CharSequence chatBuffer() {
+		return chatText;
+	}
+	
+	/**
+	 * @return The HTML with chat messages stripped as it is built, for reading without copying. Replaced when the log is reset.
+	 */
+	CharSequence htmlBuffer() {
+		return strippedLogHTML;
+	}
+	
+	/**
+	 * @return Number of turns started in <code>htmlBuffer()</code>, which may be ahead of the latest snapshot.
+	 */
+	int getHTMLTurnCount() {
+		return turnCount;
+	}
+	
+	/**
+	 * @return Offset in <code>htmlBuffer()</code> where the turn at a position starts, for positions up to <code>getHTMLTurnCount()</code>.
+	 */
+	int getTurnHTMLStart(int index) {
+		return turnHTMLOffsets[index];
+	}
+	
+	/**
+	 * @return Number in the heading of the turn at a position in <code>htmlBuffer()</code>, as for <code>getTurnNumber</code>.
+	 */
+	int getHTMLTurnNumber(int index) {
+		return turnNumbers[index];
 	}
 	
 	/**
@@ -133,14 +488,7 @@ public class BattleLog {
 	 * @return String - current turn text, IGNORING CHAT MESSAGES, or empty string if a turn hasn't started yet.
 	 */
 	public String getCurrentTurnText() {
-		String battleText = getLogHTML(true);
-		int currentTurnIdx = battleText.lastIndexOf("<h2>Turn ");
-		if (currentTurnIdx == -1) {
-			return "";
-		}
-		else {
-			return stripHTML(battleText.substring(currentTurnIdx));
-		}
+		return snapshot.get().getCurrentTurnText();
 	}
 	
 	/**
@@ -149,58 +497,100 @@ public class BattleLog {
 	 * @return String - last turn text, or empty string if a turn hasn't been completed yet.
 	 */
 	public String getLastTurnText() {
-		return getTurnText(getCurrentTurn()-1);
+		return snapshot.get().getLastTurnText();
 	}
 	
 	/**
 	 * Gets the text of the specified turn.
 	 * @param turn The turn. Turn 0 is considered to be the initial announcement of team, format, etc.
-	 * @return String - the text from that turn, including "Turn (turn number)" heading
+	 * @return String - the text from that turn, including "Turn (turn number)" heading,
+	 * or empty string if that turn hasn't started.
 	 */
 	public String getTurnText(int turn) {
-		return stripHTML(getTurnHTML(turn));
+		return snapshot.get().getTurnText(turn);
 	}
 	
 	/**
-	 * Gets the HTML of the specified turn.
+	 * Gets the interpreted events of the specified turn.
+	 * The TIContext is filled in from the Pokemon each player had out at the start of the turn.
 	 * @param turn The turn. Turn 0 is considered to be the initial announcement of team, format, etc.
-	 * @return String - the HTML from that turn, including "Turn (turn number)" heading
+	 * @return TurnInfo for that turn. Completed turns are only interpreted once while they stay cached.
 	 */
-	public String getTurnHTML(int turn) {
-		if (turn == getCurrentTurn()) {
-			return getCurrentTurnText();
-		}
-		
-		String battleHTML = getLogHTML(true);
-		int turnIdx;
-		if (turn == 0) {
-			turnIdx = battleHTML.indexOf("<h2>Turn 1</h2>");
-			return stripHTML(battleHTML.substring(0, turnIdx));
+	public TurnInfo getTurnInfo(int turn) {
+		TurnInfo turnInfo = turnCache.getTurnInfo(turn);
+		if (turnInfo == null) {
+			turnInfo = interpretTurn(turn);
+			// A turn that hasn't started yet is empty for now, and only the open turn is invalidated as the log grows
+			if (turn <= currentTurn) {
+				turnCache.putTurnInfo(turn, turnInfo);
+			}
 		}
-		String turnStr = "<h2>Turn " + turn + "</h2>";
-		turnIdx = battleHTML.indexOf(turnStr);
-		int nextTurnIdx = battleHTML.indexOf("<h2>Turn", turnIdx+turnStr.length());
-		if (turnIdx == -1 || nextTurnIdx == -1) {
-			return "";
+		return turnInfo;
+	}
+	
+	/**
+	 * Interprets the events of a turn without going through the turn cache, so once the log
+	 * has stopped changing, different turns can be interpreted on different threads at once.
+	 */
+	TurnInfo interpretTurn(int turn) {
+		TIContext context = new TIContext();
+		String[] players = getPlayerNames();
+		if (players != null) {
+			context.myCurrentPokemon = getCurrentPokemonAtTurn(players[0], turn, true);
+			context.foeCurrentPokemon = getCurrentPokemonAtTurn(players[1], turn, true);
 		}
-		else {
-			return battleHTML.substring(turnIdx, nextTurnIdx);
+		return new TurnInfo(getTurnHTML(turn), context);
+	}
+	
+	/**
+	 * @return Number of TurnInfo requests answered from the turn cache.
+	 */
+	public long getTurnCacheHits() {
+		return turnCache.getHits();
+	}
+	
+	/**
+	 * @return Number of TurnInfo requests that had to be worked out.
+	 */
+	public long getTurnCacheMisses() {
+		return turnCache.getMisses();
+	}
+	
+	/**
+	 * Gets the HTML of the specified turn, with chat messages stripped.
+	 * @param turn The turn. Turn 0 is considered to be the initial announcement of team, format, etc.
+	 * @return String - the HTML from that turn, including "Turn (turn number)" heading,
+	 * or empty string if that turn hasn't started.
+	 */
+	public String getTurnHTML(int turn) {
+		return snapshot.get().getTurnHTML(turn);
+	}
+	
+	/**
+	 * Moves an EventCursor to the start of the specified turn, reading the turn's HTML
+	 * (with chat messages stripped) straight out of the log without copying it.
+	 * @param turn The turn. Turn 0 is considered to be the initial announcement of team, format, etc.
+	 * @param cursor Cursor to reset. Event offsets it gives are into <code>getLogHTML(true)</code>.
+	 * If the turn hasn't started, it will have no events.
+	 */
+	public void readTurn(int turn, EventCursor cursor) {
+		int index = BattleLogSnapshot.turnIndex(turnNumbers, turnCount, turn);
+		if (index == -1) {
+			cursor.reset("");
+			return;
 		}
+		int end = (index == turnCount) ? strippedLogHTML.length() : turnHTMLOffsets[index+1];
+		cursor.reset(strippedLogHTML, turnHTMLOffsets[index], end);
 	}
 	
 	/**
 	 * Takes an ambiguous name string and returns the Pokemon name.
 	 * @param fullname either "Pokemon name" or "nickname (Pokemon name)"
-	 * @return The original string if it doesn't contain brackets, else what is inside the brackets.
+	 * @return The original string if it doesn't end in brackets, else what is inside the last brackets.
+	 * @see PokemonName#parse(String)
 	 */
 	public static String getNameFromPossibleNickname(String fullname) {
-		if (!fullname.contains("(")) {
-			return fullname;
-		}
-		else {
-			int idx = fullname.indexOf("(");
-			return substringToFirst(fullname,idx+1,")");
-		}
+		return PokemonName.parse(fullname).species;
 	}
 	
 	/**
@@ -211,38 +601,65 @@ public class BattleLog {
 	 * @return String - Pokemon name, empty string on failure.
 	 */
 	public String getCurrentPokemonAtTurn(String owner, int turn, boolean resolveNickname) {
-		String sentOutStr = owner + " sent out ";
 		if (turn == 0) {
 			turn = 1;
 		}
-		while (turn >= 0) {
-			--turn;
-			String text = getTurnText(turn);
-			Pattern p = Pattern.compile("^"+sentOutStr+POKEMON_NAME_PATTERN+"!$", Pattern.MULTILINE);
-			Matcher m = p.matcher(text);
-			if (m.find()) {
-				String nameWithPossibleNickname = m.group(1);
-				if (resolveNickname) {
-					return getNameFromPossibleNickname(nameWithPossibleNickname);
-				}
-				else {
-					if (nameWithPossibleNickname.contains("(")) {
-						return substringToFirst(nameWithPossibleNickname, 0, " (");
-					}
-					return nameWithPossibleNickname;
-				}
-			}
+		SwitchTimeline timeline = switchTimelines.get(owner);
+		if (timeline == null) {
+			return "";
+		}
+		SwitchIn switchIn = timeline.atStartOf(turn);
+		if (switchIn == null) {
+			return "";
+		}
+		return resolveNickname ? switchIn.species : switchIn.nickname;
+	}
+	
+	/**
+	 * Returns the species of the Pokemon on owner's side of the field at the start of turn.
+	 * @param owner Whose side of the field we are checking
+	 * @param turn Which turn we are interested in
+	 * @return <code>SymbolTable.SPECIES</code> symbol, or <code>SymbolTable.NONE</code> on failure.
+	 */
+	public int getCurrentPokemonSymbolAtTurn(String owner, int turn) {
+		if (turn == 0) {
+			turn = 1;
+		}
+		SwitchTimeline timeline = switchTimelines.get(owner);
+		SwitchIn switchIn = (timeline == null) ? null : timeline.atStartOf(turn);
+		return (switchIn == null) ? SymbolTable.NONE : switchIn.speciesSymbol;
+	}
+	
+	/**
+	 * Returns every Pokemon owner has sent out so far, in order.
+	 * @param owner Whose switches we are interested in
+	 * @return SwitchIn List - empty if owner hasn't sent anything out.
+	 */
+	public List<SwitchIn> getSwitchHistory(String owner) {
+		SwitchTimeline timeline = switchTimelines.get(owner);
+		if (timeline == null) {
+			return new ArrayList<SwitchIn>(0);
 		}
-		return "";
+		return timeline.getHistory();
+	}
+	
+	/**
+	 * @return Number of Pokemon either player has sent out, or had dragged out, so far.
+	 */
+	public int getSwitchInCount() {
+		return switchInCount;
 	}
 	
 	/**
 	 * Gets the format of the game we are currently in.
-	 * @return String - Format, eg "OU (current)"
+	 * @return String - Format, eg "OU (current)", or empty string if it hasn't been announced.
 	 */
 	public String getFormat() {
-		String blt = getLogText();
-		return (substringToFirst(blt, blt.indexOf("Format: ")+8, "\n"));
+		if (formatToken == -1) {
+			return "";
+		}
+		String line = battleLogText.substring(tokens.textStart(formatToken) + LogLexer.FORMAT.length(), tokens.textEnd(formatToken));
+		return substringToFirst(line, 0, "\n");
 	}
 	
 	/**
@@ -250,17 +667,16 @@ public class BattleLog {
 	 * @return String List - Clauses, eg "Sleep Clause"
 	 */
 	public List<String> getClauses() {
-		String blt = getTurnText(0);
 		ArrayList<String> clauses = new ArrayList<String>();
-		String[] lines = blt.split("\n");
-		for (int i = 0; i < lines.length; ++i) {
-			if (lines[i].startsWith("Battle between")) {
-				break;
+		for (int i = 0; i < tokens.size(); ++i) {
+			LogTokenType type = tokens.type(i);
+			if (type == LogTokenType.CLAUSE) {
+				clauses.add(substringToFirst(getTokenText(i), 0, ":"));
 			}
-			if (lines[i].indexOf("Clause") != -1) {
-				clauses.add(substringToFirst(lines[i],0,":"));
+			else if (type == LogTokenType.CHAT) {
+				continue;
 			}
-			else if (clauses.size() != 0) {
+			else if (clauses.size() != 0 || type == LogTokenType.BATTLE_START || type == LogTokenType.TURN) {
 				break;
 			}
 		}
@@ -269,30 +685,26 @@ public class BattleLog {
 	
 	/**
 	 * Strips the HTML of the specified string, with new lines between each element.
+	 * Elements with no text other than whitespace are left out.
 	 * logHTML should be innerHTML of some battle log element.
 	 */
-	private static String stripHTML(String logHTML) {
-		HTMLDocument document = new HTMLDocumentImpl();
-		DocumentFragment doc;
-		DOMFragmentParser parser = new DOMFragmentParser();
-		
-		doc = document.createDocumentFragment();
-		InputSource inputSource = new InputSource( new ByteArrayInputStream( logHTML.getBytes() ) );
-
-		try {
-			parser.parse(inputSource, doc);
-		}
-		catch (Exception e) {
-			e.printStackTrace();
-			return "";
+	public static String stripHTML(CharSequence logHTML) {
+		LogScanner scanner = new LogScanner();
+		StringBuilder text = new StringBuilder(logHTML.length() / 2);
+		int start = 0;
+		int end;
+		while ((end = scanner.nextNode(logHTML, start, logHTML.length())) != -1) {
+			if (scanner.hasText()) {
+				text.append(scanner.getText()).append('\n');
+			}
+			start = end;
 		}
-		
-		StringBuffer text = new StringBuffer();
-		NodeList list = doc.getChildNodes();
-		for (int i = 0; i < list.getLength(); ++i) {
-			Node node = list.item(i);
-			if (node.getTextContent().trim().length() > 0)
-				text.append(node.getTextContent() + "\n");
+		// Whatever is left is an unclosed element or trailing text; take it as it is.
+		if (start < logHTML.length()) {
+			scanner.nextNode(logHTML, start, logHTML.length());
+			if (scanner.hasText()) {
+				text.append(scanner.getText()).append('\n');
+			}
 		}
 		return text.toString();
 	}
@@ -303,14 +715,75 @@ public class BattleLog {
 	 * ("Battle between (player1) and (player2) started!")
 	 */
 	public String[] getPlayerNames() {
-		Pattern p = Pattern.compile("^Battle between (.+?) and (.+?) started!$", Pattern.MULTILINE);
-		Matcher m = p.matcher(getLogText());
-		if (m.find()) {
-			String[] names = new String[2];
-			names[0] = m.group(1);
-			names[1] = m.group(2);
-			return names;
-		}
-		return null;
+		if (battleStartToken == -1) {
+			return null;
+		}
+		int textStart = tokens.textStart(battleStartToken);
+		int and = textStart + tokens.argument(battleStartToken);
+		String[] names = new String[2];
+		names[0] = players.intern(battleLogText, textStart + LogLexer.BATTLE_BETWEEN.length(), and);
+		names[1] = players.intern(battleLogText, and + LogLexer.BATTLE_AND.length(),
+				tokens.textEnd(battleStartToken) - LogLexer.BATTLE_STARTED.length());
+		return names;
+	}
+	
+	/**
+	 * Gets the players from the battle log as symbols of <code>getPlayerTable()</code>.
+	 * @return int Array - player's symbols, or null if the log doesn't say who the players are yet.
+	 * @see BattleLog#getPlayerNames()
+	 */
+	public int[] getPlayerSymbols() {
+		String[] names = getPlayerNames();
+		if (names == null) {
+			return null;
+		}
+		return new int[] { players.symbol(names[0]), players.symbol(names[1]) };
+	}
+	
+	/**
+	 * @return Symbols of the names of the players in this battle, and of anyone else who sent out a Pokemon.
+	 */
+	public SymbolTable getPlayerTable() {
+		return players;
+	}
+	
+	/**
+	 * @return Number of lines lexed from the log so far, chat messages included.
+	 */
+	public int getTokenCount() {
+		return tokens.size();
+	}
+	
+	/**
+	 * @param token Index of the line [0, getTokenCount())
+	 * @return What kind of line it is.
+	 */
+	public LogTokenType getTokenType(int token) {
+		return tokens.type(token);
+	}
+	
+	/**
+	 * @param token Index of the line [0, getTokenCount())
+	 * @return The line's text, without the trailing new line.
+	 */
+	public String getTokenText(int token) {
+		CharStore text = (tokens.type(token) == LogTokenType.CHAT) ? chatText : battleLogText;
+		return text.substring(tokens.textStart(token), tokens.textEnd(token));
+	}
+	
+	/**
+	 * @param token Index of the line [0, getTokenCount())
+	 * @return Offset in the raw log HTML (<code>getLogHTML(false)</code>) where the line's element starts.
+	 */
+	public int getTokenSourceStart(int token) {
+		return tokens.sourceStart(token);
+	}
+	
+	/**
+	 * @param token Index of the line [0, getTokenCount())
+	 * @return Offset in the raw log HTML (<code>getLogHTML(false)</code>) just past the line's element.
+	 */
+	public int getTokenSourceEnd(int token) {
+		return tokens.sourceEnd(token);
 	}
 }
@@ -0,0 +1,234 @@
+package seleniumhelper.loginterpret;
+
+/**
+ * Immutable view of a BattleLog at one moment, which any number of threads can read without locking.<br/>
+ * A BattleLog publishes a new snapshot each time new log content is interpreted. Nothing is copied to
+ * take one: the log only ever appends to its text (see <code>CharStore</code>) and turn offsets, so a
+ * snapshot shares them with the log and only reads up to the lengths they had when it was taken.
+ * Strings are made when asked for.
+ * @author burse
+ */
+public final class BattleLogSnapshot {
+	
+	/**
+	 * One of the forms the log is kept in, as it was when the snapshot was taken.
+	 */
+	static final class Text {
+		// The store's array, read up to length
+		final char[] chars;
+		final int length;
+		
+		// Where each turn starts in chars, by position in the log. Shared with the BattleLog,
+		// which may fill in entries past the snapshot's turn count.
+		final int[] turnStarts;
+		
+		Text(CharStore store, int[] turnStarts) {
+			this.chars = store.array();
+			this.length = store.length();
+			this.turnStarts = turnStarts;
+		}
+		
+		/**
+		 * Whether the text contains <code>s</code>.
+		 */
+		boolean contains(String s) {
+			if (s.length() == 0) {
+				return true;
+			}
+			int last = length - s.length();
+			char first = s.charAt(0);
+			for (int i = 0; i <= last; ++i) {
+				if (chars[i] != first) {
+					continue;
+				}
+				int j = 1;
+				while (j < s.length() && chars[i + j] == s.charAt(j)) {
+					++j;
+				}
+				if (j == s.length()) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+	
+	private final long version;
+	
+	// The log's text, HTML with and without chat messages, and chat text
+	private final Text text;
+	private final Text html;
+	private final Text rawHTML;
+	private final Text chat;
+	
+	// Number in each turn's heading, by position in the log. Shared with the BattleLog like the turn starts.
+	private final int[] turnNumbers;
+	private final int turnCount;
+	
+	private final int currentTurn;
+	
+	// Whole log strings, made on request. Racing threads may each make them, but get equal Strings.
+	private String logText;
+	private String logHTML;
+	private String rawLogHTML;
+	
+	BattleLogSnapshot(long version, Text text, Text html, Text rawHTML, Text chat, int[] turnNumbers, int turnCount, int currentTurn) {
+		this.version = version;
+		this.text = text;
+		this.html = html;
+		this.rawHTML = rawHTML;
+		this.chat = chat;
+		this.turnNumbers = turnNumbers;
+		this.turnCount = turnCount;
+		this.currentTurn = currentTurn;
+	}
+	
+	/**
+	 * @return Number of snapshots the BattleLog had published before this one. Later snapshots have higher versions.
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * @see BattleLog#getCurrentTurn()
+	 */
+	public int getCurrentTurn() {
+		return currentTurn;
+	}
+	
+	/**
+	 * @see BattleLog#getTurnCount()
+	 */
+	public int getTurnCount() {
+		return turnCount;
+	}
+	
+	/**
+	 * @see BattleLog#getTurnNumber(int)
+	 */
+	public int getTurnNumber(int index) {
+		if (index < 0 || index > turnCount) {
+			return -1;
+		}
+		return turnNumbers[index];
+	}
+	
+	/**
+	 * @see BattleLog#getLogText()
+	 */
+	public String getLogText() {
+		String s = logText;
+		if (s == null) {
+			s = text.toString();
+			logText = s;
+		}
+		return s;
+	}
+	
+	/**
+	 * @see BattleLog#getLogHTML(boolean)
+	 */
+	public String getLogHTML(boolean stripChats) {
+		String s = stripChats ? logHTML : rawLogHTML;
+		if (s == null) {
+			if (stripChats) {
+				s = html.toString();
+				logHTML = s;
+			}
+			else {
+				s = rawHTML.toString();
+				rawLogHTML = s;
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * @see BattleLog#contains(String, boolean)
+	 */
+	public boolean contains(String s, boolean ignoreChats) {
+		return text.contains(s) || (!ignoreChats && chat.contains(s));
+	}
+	
+	/**
+	 * @see BattleLog#getTurnText(int)
+	 */
+	public String getTurnText(int turn) {
+		int index = turnIndex(turnNumbers, turnCount, turn);
+		if (index == -1) {
+			return "";
+		}
+		return turn(text, index);
+	}
+	
+	/**
+	 * @see BattleLog#getTurnHTML(int)
+	 */
+	public String getTurnHTML(int turn) {
+		int index = turnIndex(turnNumbers, turnCount, turn);
+		if (index == -1) {
+			return "";
+		}
+		return turn(html, index);
+	}
+	
+	/**
+	 * @see BattleLog#getCurrentTurnText()
+	 */
+	public String getCurrentTurnText() {
+		if (turnCount == 0) {
+			return "";
+		}
+		return turn(text, turnCount);
+	}
+	
+	/**
+	 * @see BattleLog#getLastTurnText()
+	 */
+	public String getLastTurnText() {
+		if (turnCount == 0) {
+			return "";
+		}
+		return turn(text, turnCount - 1);
+	}
+	
+	/**
+	 * Finds a turn's position in the log from its number, as the log may not start at turn 1.
+	 * @param turnNumbers Number in each turn's heading, by position; position 0 is always turn 0.
+	 * @param turnCount Number of turn headings in the log.
+	 * @return The position of the turn, or -1 if the log has no turn with that number.
+	 */
+	static int turnIndex(int[] turnNumbers, int turnCount, int turn) {
+		if (turn == 0) {
+			return 0;
+		}
+		if (turnCount == 0) {
+			return -1;
+		}
+		// Headings are almost always numbered one after another
+		int index = turn - turnNumbers[1] + 1;
+		if (index >= 1 && index <= turnCount && turnNumbers[index] == turn) {
+			return index;
+		}
+		for (int i = 1; i <= turnCount; ++i) {
+			if (turnNumbers[i] == turn) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Makes a String of the turn at a position in the log.
+	 */
+	private String turn(Text form, int index) {
+		int start = form.turnStarts[index];
+		int end = (index == turnCount) ? form.length : form.turnStarts[index + 1];
+		return new String(form.chars, start, end - start);
+	}
+}
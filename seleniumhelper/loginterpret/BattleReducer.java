@@ -0,0 +1,31 @@
+package seleniumhelper.loginterpret;
+
+import java.util.List;
+
+/**
+ * Turns each battle of a corpus into a result, and merges the results, for <code>CorpusParser</code>.<br/>
+ * Battles are reduced on many threads at once, so <code>reduce</code> must not change anything shared
+ * without synchronising. Results are always combined in corpus order (files by name, battles as they
+ * appear in each file), so <code>combine</code> needs to be associative but not commutative.
+ * @author burse
+ */
+public interface BattleReducer<R> {
+	
+	/**
+	 * @return The result for no battles at all. Must be a new object if results are mutable.
+	 */
+	R empty();
+	
+	/**
+	 * Gets the result for one battle.
+	 * @param battle The battle, completely read.
+	 * @param turns TurnInfo for every turn of the battle in order, the i'th being turn <code>battle.getTurnNumber(i)</code>.
+	 */
+	R reduce(BattleLog battle, List<TurnInfo> turns);
+	
+	/**
+	 * Merges the results for two consecutive runs of battles.
+	 * Either result may be changed and returned.
+	 */
+	R combine(R left, R right);
+}
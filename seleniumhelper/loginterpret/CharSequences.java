@@ -0,0 +1,63 @@
+package seleniumhelper.loginterpret;
+
+/**
+ * Helpers for matching and hashing spans of the log's text in place, without copying them out to Strings.
+ * @author burse
+ */
+final class CharSequences {
+	
+	private CharSequences() {
+	}
+	
+	/**
+	 * Whether s is in src at start, without going past limit.
+	 */
+	static boolean regionMatches(CharSequence src, int start, int limit, String s) {
+		if (start + s.length() > limit) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); ++i) {
+			if (src.charAt(start + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return Offset of the first s in src[from, limit), or -1 if there isn't one.
+	 */
+	static int indexOf(CharSequence src, String s, int from, int limit) {
+		for (int i = from; i + s.length() <= limit; ++i) {
+			if (regionMatches(src, i, limit, s)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Whether the span text[start, end) is the same as s.
+	 */
+	static boolean matches(String s, CharSequence text, int start, int end) {
+		return s.length() == end - start && regionMatches(text, start, end, s);
+	}
+	
+	/**
+	 * Same as <code>String.hashCode</code> of the span.
+	 */
+	static int hash(CharSequence text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; ++i) {
+			h = 31 * h + text.charAt(i);
+		}
+		return h;
+	}
+	
+	/**
+	 * Mixes the high bits of a hash into the low bits a table index is taken from.
+	 */
+	static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,88 @@
+package seleniumhelper.loginterpret;
+
+import java.util.Arrays;
+
+/**
+ * Append-only text, which BattleLog builds its log text and HTML in.<br/>
+ * Characters are never changed once appended: when the store grows it moves to a bigger array, leaving
+ * the old one as it was. So the array and length at any moment (see <code>array()</code>) can be handed
+ * to other threads as a view that later appends never disturb, without copying the text.
+ * @author burse
+ */
+final class CharStore implements CharSequence {
+	
+	private char[] chars;
+	private int length;
+	
+	CharStore() {
+		this(256);
+	}
+	
+	CharStore(int capacity) {
+		chars = new char[capacity];
+	}
+	
+	CharStore append(char c) {
+		ensureCapacity(length + 1);
+		chars[length++] = c;
+		return this;
+	}
+	
+	CharStore append(CharSequence s) {
+		return append(s, 0, s.length());
+	}
+	
+	CharStore append(CharSequence s, int start, int end) {
+		int count = end - start;
+		ensureCapacity(length + count);
+		if (s instanceof String) {
+			((String) s).getChars(start, end, chars, length);
+		}
+		else if (s instanceof StringBuilder) {
+			((StringBuilder) s).getChars(start, end, chars, length);
+		}
+		else if (s instanceof CharStore) {
+			System.arraycopy(((CharStore) s).chars, start, chars, length, count);
+		}
+		else {
+			for (int i = start; i < end; ++i) {
+				chars[length + i - start] = s.charAt(i);
+			}
+		}
+		length += count;
+		return this;
+	}
+	
+	void ensureCapacity(int capacity) {
+		if (capacity > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+		}
+	}
+	
+	/**
+	 * @return The array the text is in, up to <code>length()</code>. Appends never change what is there already.
+	 */
+	char[] array() {
+		return chars;
+	}
+	
+	public int length() {
+		return length;
+	}
+	
+	public char charAt(int index) {
+		return chars[index];
+	}
+	
+	public CharSequence subSequence(int start, int end) {
+		return substring(start, end);
+	}
+	
+	String substring(int start, int end) {
+		return new String(chars, start, end - start);
+	}
+	
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+}
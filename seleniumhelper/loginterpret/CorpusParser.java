@@ -0,0 +1,257 @@
+package seleniumhelper.loginterpret;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses a whole corpus of saved battle logs in parallel on a ForkJoinPool.<br/>
+ * The corpus is a battle archive (see <code>BattleArchive</code>) or a directory of them, searched recursively.
+ * Files are split between the pool's threads; within each file, one thread only finds where each battle
+ * starts, and every battle is lexed, interpreted and reduced as its own task, with long battles'
+ * turns interpreted in several tasks. Results are merged through a <code>BattleReducer</code>.<br/>
+ * Apart from finding battle boundaries, which is a quick scan, all the work is shared out, so
+ * throughput grows with the number of threads until the disk can't keep up.<br/>
+ * A file that can't be read doesn't stop the rest of the corpus being parsed; the battles read from it
+ * before the error are kept, and the error, naming the file, is reported once every file is done.
+ * @author burse
+ */
+public class CorpusParser {
+	
+	// Battles handed out per archive before waiting for the oldest, per thread in the pool
+	private static final int BATTLES_IN_FLIGHT = 4;
+	
+	// Turns interpreted in one task; longer battles are split up
+	private static final int TURNS_PER_TASK = 16;
+	
+	private final ForkJoinPool pool;
+	private final Charset charset;
+	
+	/**
+	 * Makes a parser using a new pool with a thread per processor, for UTF-8 logs.
+	 */
+	public CorpusParser() {
+		this(new ForkJoinPool());
+	}
+	
+	/**
+	 * Makes a parser for UTF-8 logs.
+	 * @param pool Pool to run on. Its parallelism sets how many battles are parsed at once.
+	 */
+	public CorpusParser(ForkJoinPool pool) {
+		this(pool, Charset.forName("UTF-8"));
+	}
+	
+	/**
+	 * @param pool Pool to run on. Its parallelism sets how many battles are parsed at once.
+	 * @param charset The logs' character encoding.
+	 */
+	public CorpusParser(ForkJoinPool pool, Charset charset) {
+		this.pool = pool;
+		this.charset = charset;
+	}
+	
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+	
+	/**
+	 * Parses every battle in a file or directory, waiting until they are all done.
+	 * @param corpus A battle archive or single log, or a directory of them.
+	 * @param reducer Makes and merges the results.
+	 * @return Every battle's result, combined in order.
+	 * @throws IOException If the corpus doesn't exist or a file can't be read. The whole corpus is still
+	 * parsed first; the exception is the first file's error, with any others suppressed in it.
+	 */
+	public <R> R parse(File corpus, BattleReducer<R> reducer) throws IOException {
+		List<IOException> errors = new ArrayList<IOException>();
+		R result = parse(corpus, reducer, errors);
+		if (!errors.isEmpty()) {
+			IOException e = errors.get(0);
+			for (int i = 1; i < errors.size(); ++i) {
+				e.addSuppressed(errors.get(i));
+			}
+			throw e;
+		}
+		return result;
+	}
+	
+	/**
+	 * Parses every battle in a file or directory, waiting until they are all done, skipping files that can't be read.
+	 * @param corpus A battle archive or single log, or a directory of them.
+	 * @param reducer Makes and merges the results.
+	 * @param errors Gets the error for each file that couldn't be read, in corpus order. Each names its file.
+	 * @return Every battle's result, combined in order, including those read from a file before its error.
+	 * @throws IOException If the corpus doesn't exist.
+	 */
+	public <R> R parse(File corpus, BattleReducer<R> reducer, List<IOException> errors) throws IOException {
+		List<File> files = new ArrayList<File>();
+		addFiles(corpus, files);
+		if (files.isEmpty()) {
+			return reducer.empty();
+		}
+		// Each file's task fills in its own entry, and they are all joined before it is read
+		IOException[] fileErrors = new IOException[files.size()];
+		R result = pool.invoke(new FilesTask<R>(this, reducer, files, fileErrors, 0, files.size()));
+		for (IOException e : fileErrors) {
+			if (e != null) {
+				errors.add(e);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds the file, or the files in the directory and every directory under it, sorted by name.
+	 */
+	private static void addFiles(File corpus, List<File> files) throws IOException {
+		if (!corpus.isDirectory()) {
+			if (!corpus.isFile()) {
+				throw new IOException("Unable to read battle corpus " + corpus);
+			}
+			files.add(corpus);
+			return;
+		}
+		File[] children = corpus.listFiles();
+		if (children == null) {
+			throw new IOException("Unable to list battle corpus directory " + corpus);
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			addFiles(child, files);
+		}
+	}
+	
+	/**
+	 * Parses files[start, end), splitting them in half until there is one file per task.
+	 */
+	private static final class FilesTask<R> extends RecursiveTask<R> {
+		private static final long serialVersionUID = 1L;
+		
+		private final CorpusParser parser;
+		private final BattleReducer<R> reducer;
+		private final List<File> files;
+		private final IOException[] errors;
+		private final int start;
+		private final int end;
+		
+		FilesTask(CorpusParser parser, BattleReducer<R> reducer, List<File> files, IOException[] errors, int start, int end) {
+			this.parser = parser;
+			this.reducer = reducer;
+			this.files = files;
+			this.errors = errors;
+			this.start = start;
+			this.end = end;
+		}
+		
+		protected R compute() {
+			if (end - start == 1) {
+				return parser.parseArchive(files.get(start), reducer, errors, start);
+			}
+			int middle = (start + end) >>> 1;
+			FilesTask<R> left = new FilesTask<R>(parser, reducer, files, errors, start, middle);
+			left.fork();
+			R right = new FilesTask<R>(parser, reducer, files, errors, middle, end).compute();
+			return reducer.combine(left.join(), right);
+		}
+	}
+	
+	/**
+	 * Splits an archive into battles, forking a task for each. Only so many battles are
+	 * kept in flight, so an archive bigger than the heap doesn't end up in memory all at once.
+	 * If the archive can't be read, the error goes in <code>errors[index]</code> and the battles read so far are kept.
+	 */
+	private <R> R parseArchive(File file, BattleReducer<R> reducer, IOException[] errors, int index) {
+		int window = BATTLES_IN_FLIGHT * pool.getParallelism();
+		LinkedList<BattleTask<R>> inFlight = new LinkedList<BattleTask<R>>();
+		R result = reducer.empty();
+		try {
+			BattleArchive archive = new BattleArchive(file, charset, true);
+			try {
+				CharSequence text;
+				while ((text = archive.nextBattleText()) != null) {
+					BattleTask<R> battle = new BattleTask<R>(reducer, text);
+					battle.fork();
+					inFlight.add(battle);
+					if (inFlight.size() > window) {
+						result = reducer.combine(result, inFlight.removeFirst().join());
+					}
+				}
+			}
+			finally {
+				archive.close();
+			}
+		}
+		catch (IOException e) {
+			errors[index] = new IOException("Unable to read battle archive " + file, e);
+		}
+		for (BattleTask<R> battle : inFlight) {
+			result = reducer.combine(result, battle.join());
+		}
+		return result;
+	}
+	
+	/**
+	 * Interprets one battle's log and all its turns, and reduces it.
+	 */
+	private static final class BattleTask<R> extends RecursiveTask<R> {
+		private static final long serialVersionUID = 1L;
+		
+		private final BattleReducer<R> reducer;
+		private CharSequence text;
+		
+		BattleTask(BattleReducer<R> reducer, CharSequence text) {
+			this.reducer = reducer;
+			this.text = text;
+		}
+		
+		protected R compute() {
+			BattleLog battle = new BattleLog("");
+			battle.interpret(text);
+			battle.publish();
+			// The log has its own copy now
+			text = null;
+			
+			TurnInfo[] turns = new TurnInfo[battle.getTurnCount() + 1];
+			new TurnsTask(battle, turns, 0, turns.length).invoke();
+			return reducer.reduce(battle, Arrays.asList(turns));
+		}
+	}
+	
+	/**
+	 * Interprets turns[start, end) of a battle, splitting them up if there are many.
+	 */
+	private static final class TurnsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final BattleLog battle;
+		private final TurnInfo[] turns;
+		private final int start;
+		private final int end;
+		
+		TurnsTask(BattleLog battle, TurnInfo[] turns, int start, int end) {
+			this.battle = battle;
+			this.turns = turns;
+			this.start = start;
+			this.end = end;
+		}
+		
+		protected void compute() {
+			if (end - start <= TURNS_PER_TASK) {
+				for (int i = start; i < end; ++i) {
+					turns[i] = battle.interpretTurn(battle.getTurnNumber(i));
+				}
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new TurnsTask(battle, turns, start, middle), new TurnsTask(battle, turns, middle, end));
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package seleniumhelper.loginterpret;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import seleniumhelper.loginterpret.events.EventAssembler;
+import seleniumhelper.loginterpret.events.TIEvent;
+
+/**
+ * Pushes the TIEvents of a battle log to listeners as they happen, rather than a turn at a time.<br/>
+ * Each <code>update</code> only reads the log HTML received since the last one, and sends every event
+ * it completes to the listeners straight away, so each event is read once and delivered once.
+ * Events still waiting for lines (eg. ones which run up to the next spacer) are delivered by the
+ * update which receives their last line, or the start of the next turn.<br/>
+ * A stream which starts part way through a battle, or sees a new log, first delivers the events already in it.
+ * While there are no listeners, updates skip what has been received without reading it, so a listener added
+ * later only hears of what is received from then on.
+ * @author burse
+ */
+public class EventStream {
+	
+	/**
+	 * Called for each event, in the order they happened.
+	 */
+	public interface Listener {
+		/**
+		 * @param event The event.
+		 * @param turn The turn the event happened in, as for <code>BattleLog.getTurnInfo</code>.
+		 * @param log The log the event was read from.
+		 */
+		void eventRead(TIEvent event, int turn, BattleLog log);
+	}
+	
+	private final List<Listener> listeners = new ArrayList<Listener>();
+	
+	private final EventAssembler assembler = new EventAssembler();
+	
+	// Events completed by the chunk just read
+	private final List<TIEvent> completed = new ArrayList<TIEvent>();
+	
+	// The log HTML last read, the position and number of the turn being read, and how far it has been read
+	private CharSequence html;
+	private int turnIndex;
+	private int turn;
+	private int position;
+	
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Reads whatever has been added to the log since the last update, sending the events completed to the listeners.
+	 * If <code>log</code> is a different log to last time (or has been reset) it is read from the start.
+	 * @param log The battle log to read.
+	 */
+	public void update(BattleLog log) {
+		CharSequence newHTML = log.htmlBuffer();
+		if (listeners.isEmpty()) {
+			skip(log, newHTML);
+			return;
+		}
+		if (newHTML != html) {
+			html = newHTML;
+			turnIndex = 0;
+			turn = 0;
+			position = 0;
+			assembler.reset();
+		}
+		// Finish the turns which have ended, then read as far as the log goes
+		while (turnIndex < log.getHTMLTurnCount()) {
+			int turnEnd = log.getTurnHTMLStart(turnIndex + 1);
+			assembler.append(html, position, turnEnd, completed);
+			assembler.endTurn(turnEnd, completed);
+			deliver(log);
+			position = turnEnd;
+			++turnIndex;
+			turn = log.getHTMLTurnNumber(turnIndex);
+		}
+		assembler.append(html, position, html.length(), completed);
+		deliver(log);
+		position = html.length();
+	}
+	
+	/**
+	 * Moves to the end of the log without reading it.
+	 */
+	private void skip(BattleLog log, CharSequence newHTML) {
+		html = newHTML;
+		turnIndex = log.getHTMLTurnCount();
+		turn = log.getHTMLTurnNumber(turnIndex);
+		position = newHTML.length();
+		// Events part way through their lines are dropped; reading starts again at the next line
+		assembler.reset();
+	}
+	
+	/**
+	 * @return The turn being read, as for <code>BattleLog.getTurnInfo</code>.
+	 */
+	public int getTurn() {
+		return turn;
+	}
+	
+	private void deliver(BattleLog log) {
+		if (completed.isEmpty()) {
+			return;
+		}
+		// Listeners may add or remove listeners as they go
+		Listener[] current = listeners.toArray(new Listener[listeners.size()]);
+		for (int i = 0; i < completed.size(); ++i) {
+			for (Listener listener : current) {
+				listener.eventRead(completed.get(i), turn, log);
+			}
+		}
+		completed.clear();
+	}
+}
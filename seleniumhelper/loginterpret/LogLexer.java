@@ -0,0 +1,186 @@
+package seleniumhelper.loginterpret;
+
+/**
+ * Reads battle log HTML one top-level node at a time and classifies each into a LogTokenType,
+ * so that every line of the log only has to be looked at once.<br/>
+ * Top-level text is read a line at a time, so logs saved as plain text lex the same way as HTML.
+ * @author burse
+ */
+final class LogLexer {
+	
+	static final String CHAT_DIV = "<div class=\"chat\">";
+	static final String TURN_HEADING = "<h2>Turn ";
+	static final String TURN_LINE = "Turn ";
+	static final String SENT_OUT = " sent out ";
+	static final String BATTLE_BETWEEN = "Battle between ";
+	static final String BATTLE_AND = " and ";
+	static final String BATTLE_STARTED = " started!";
+	static final String FORMAT = "Format: ";
+	static final String CLAUSE = "Clause";
+	static final String WON = " won the battle!";
+	static final String DRAGGED_OUT = " was dragged out!";
+	
+	private final LogScanner scanner = new LogScanner(true);
+	
+	// Clauses are only announced before the battle starts
+	private boolean battleStarted;
+	
+	// Classification of the last node read; null if it has no text
+	private LogTokenType type;
+	
+	// Extra information about the last node read (see getArgument)
+	private int argument;
+	
+	/**
+	 * Reads the top-level node starting at <code>from</code>.
+	 * @return Offset just past the end of the node, or -1 if the node isn't complete before <code>limit</code>.
+	 */
+	int next(CharSequence src, int from, int limit) {
+		int end = scanner.nextNode(src, from, limit);
+		if (end != -1) {
+			classify(src, from, end);
+		}
+		return end;
+	}
+	
+	/**
+	 * Forgets everything read so far, to start lexing a new log.
+	 */
+	void reset() {
+		battleStarted = false;
+	}
+	
+	/**
+	 * @return Type of the last node read, or null if it has no text (eg whitespace, spacer divs).
+	 */
+	LogTokenType getType() {
+		return type;
+	}
+	
+	/**
+	 * @return For TURN, the turn number. For SWITCH, the offset in the text of " sent out ".
+	 * For BATTLE_START, the offset in the text of " and " between the player names. Otherwise 0.
+	 */
+	int getArgument() {
+		return argument;
+	}
+	
+	/**
+	 * @return Text content of the last node read. Only valid until the next read.
+	 */
+	CharSequence getText() {
+		return scanner.getText();
+	}
+	
+	private void classify(CharSequence src, int start, int end) {
+		argument = 0;
+		if (isChat(src, start, end)) {
+			type = LogTokenType.CHAT;
+			return;
+		}
+		if (!scanner.hasText()) {
+			type = null;
+			return;
+		}
+		
+		CharSequence text = scanner.getText();
+		int length = text.length();
+		if (CharSequences.regionMatches(src, start, end, TURN_HEADING)) {
+			type = LogTokenType.TURN;
+			argument = parseTurnNumber(src, start + TURN_HEADING.length(), end);
+			return;
+		}
+		if (src.charAt(start) != '<' && isTurnLine(text)) {
+			type = LogTokenType.TURN;
+			argument = parseTurnNumber(text, TURN_LINE.length(), length);
+			return;
+		}
+		if (endsWith(text, WON)) {
+			type = LogTokenType.WIN;
+			return;
+		}
+		if (endsWith(text, "!")) {
+			int sentOut = CharSequences.indexOf(text, SENT_OUT, 0, length);
+			if (sentOut > 0) {
+				type = LogTokenType.SWITCH;
+				argument = sentOut;
+				return;
+			}
+		}
+		if (!battleStarted && CharSequences.regionMatches(text, 0, length, BATTLE_BETWEEN) && endsWith(text, BATTLE_STARTED)) {
+			int and = CharSequences.indexOf(text, BATTLE_AND, BATTLE_BETWEEN.length(), length);
+			if (and != -1) {
+				type = LogTokenType.BATTLE_START;
+				argument = and;
+				battleStarted = true;
+				return;
+			}
+		}
+		if (CharSequences.regionMatches(text, 0, length, FORMAT)) {
+			type = LogTokenType.FORMAT;
+		}
+		else if (!battleStarted && CharSequences.indexOf(text, CLAUSE, 0, length) != -1) {
+			type = LogTokenType.CLAUSE;
+		}
+		else {
+			type = LogTokenType.OTHER;
+		}
+	}
+	
+	/**
+	 * Whether the node between start and end is a chat message.
+	 * As with the <code>&lt;div class="chat"&gt;.*?&lt;/div&gt;</code> regex this replaces,
+	 * the message must be closed on the same line it started.
+	 */
+	private static boolean isChat(CharSequence src, int start, int end) {
+		if (!CharSequences.regionMatches(src, start, end, CHAT_DIV)) {
+			return false;
+		}
+		for (int i = start + CHAT_DIV.length(); i < end; ++i) {
+			char c = src.charAt(i);
+			if (c == '\n') {
+				return false;
+			}
+			if (c == '<' && CharSequences.regionMatches(src, i, end, "</div>")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Whether a line of plain text is a turn heading, ie "Turn (number)".
+	 */
+	static boolean isTurnLine(CharSequence text) {
+		int length = text.length();
+		if (length == TURN_LINE.length() || !CharSequences.regionMatches(text, 0, length, TURN_LINE)) {
+			return false;
+		}
+		for (int i = TURN_LINE.length(); i < length; ++i) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static int parseTurnNumber(CharSequence src, int start, int end) {
+		int turn = 0;
+		for (int i = start; i < end; ++i) {
+			char c = src.charAt(i);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			turn = turn * 10 + (c - '0');
+		}
+		return turn;
+	}
+	
+	static boolean endsWith(CharSequence text, String s) {
+		if (text.length() < s.length()) {
+			return false;
+		}
+		return CharSequences.regionMatches(text, text.length() - s.length(), text.length(), s);
+	}
+}
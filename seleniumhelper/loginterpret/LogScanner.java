@@ -0,0 +1,376 @@
+package seleniumhelper.loginterpret;
+
+/**
+ * Finds the boundaries of top-level nodes in battle log HTML, so that the log can be
+ * interpreted one element at a time as it grows, and extracts the text of each node as it goes.<br/>
+ * A node is either an element (eg <code>&lt;div&gt;...&lt;/div&gt;</code>, <code>&lt;h2&gt;...&lt;/h2&gt;</code>),
+ * a comment, or a run of text between elements. Optionally, runs of text are split into
+ * lines instead, so that plain text logs (eg dumped with <code>BattleLog.getLogText()</code>) scan one line at a time.<br/>
+ * The text of a node is what a DOM would give as its text content: all the text inside it with
+ * tags removed and character references decoded. The text buffer is reused for every node.
+ * @author burse
+ */
+final class LogScanner {
+	
+	/**
+	 * Elements which never have content or a closing tag.
+	 */
+	private static final String[] VOID_ELEMENTS = {
+		"br", "img", "hr", "input", "meta", "link", "area", "base", "col", "embed", "param", "source", "track", "wbr"
+	};
+	
+	// Longest character reference name or number we will try to decode
+	private static final int MAX_REFERENCE_LENGTH = 32;
+	
+	// Names of the currently open elements, as offsets into the source
+	private int[] openNameStart = new int[16];
+	private int[] openNameLength = new int[16];
+	private int depth;
+	
+	// Text content of the last node scanned
+	private final StringBuilder text = new StringBuilder(256);
+	
+	// Whether text contains anything other than whitespace
+	private boolean hasText;
+	
+	// Whether top-level text ends at the end of each line rather than at the next tag
+	private final boolean splitTextLines;
+	
+	LogScanner() {
+		this(false);
+	}
+	
+	/**
+	 * @param splitTextLines Set to true to make each line of top-level text a node of its own.
+	 * The line break is part of the node, but not its text.
+	 */
+	LogScanner(boolean splitTextLines) {
+		this.splitTextLines = splitTextLines;
+	}
+	
+	/**
+	 * Finds the end of the top-level node starting at <code>from</code>.
+	 * @param src Battle log HTML
+	 * @param from Offset of the start of the node
+	 * @param limit Offset to stop scanning at
+	 * @return Offset just past the end of the node, or -1 if the node isn't complete before <code>limit</code>.
+	 */
+	int nextNode(CharSequence src, int from, int limit) {
+		depth = 0;
+		text.setLength(0);
+		hasText = false;
+		if (from >= limit) {
+			return -1;
+		}
+		
+		// Top-level text runs until the next tag (or line break).
+		if (!isTagStart(src, from, limit)) {
+			int i = from;
+			while (i < limit) {
+				char c = src.charAt(i);
+				if (splitTextLines && (c == '\n' || c == '\r')) {
+					return lineEnd(src, i, limit);
+				}
+				if (isPlainText(c)) {
+					appendText(c);
+					++i;
+				}
+				else if (isTagStart(src, i, limit)) {
+					return i;
+				}
+				else {
+					i = appendChar(src, i, limit);
+				}
+			}
+			return -1;
+		}
+		
+		int i = from;
+		while (i < limit) {
+			if (isPlainText(src.charAt(i))) {
+				appendText(src.charAt(i));
+				++i;
+				continue;
+			}
+			if (!isTagStart(src, i, limit)) {
+				i = appendChar(src, i, limit);
+				continue;
+			}
+			if (CharSequences.regionMatches(src, i, limit, "<!--")) {
+				int close = CharSequences.indexOf(src, "-->", i + 4, limit);
+				if (close == -1) {
+					return -1;
+				}
+				// Comments are only text when they are the node itself
+				if (depth == 0) {
+					for (int j = i + 4; j < close; ++j) {
+						appendText(src.charAt(j));
+					}
+				}
+				i = close + 3;
+			}
+			else {
+				int tagEnd = findTagEnd(src, i, limit);
+				if (tagEnd == -1) {
+					return -1;
+				}
+				char c = src.charAt(i + 1);
+				if (c == '/') {
+					closeElement(src, i + 2, tagEnd);
+				}
+				else if (c != '!' && c != '?') {
+					openElement(src, i + 1, tagEnd);
+				}
+				i = tagEnd + 1;
+			}
+			if (depth == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return Offset just past the line break at <code>i</code>, or -1 if a \r might be followed by a \n not received yet.
+	 */
+	private static int lineEnd(CharSequence src, int i, int limit) {
+		if (src.charAt(i) == '\n') {
+			return i + 1;
+		}
+		if (i + 1 >= limit) {
+			return -1;
+		}
+		return (src.charAt(i + 1) == '\n') ? i + 2 : i + 1;
+	}
+	
+	/**
+	 * @return The text content of the last node scanned. Only valid until the next scan.
+	 */
+	CharSequence getText() {
+		return text;
+	}
+	
+	/**
+	 * @return Whether the text content of the last node scanned is more than just whitespace.
+	 */
+	boolean hasText() {
+		return hasText;
+	}
+	
+	/**
+	 * Whether the character can go straight into the text content.
+	 */
+	private static boolean isPlainText(char c) {
+		return c != '<' && c != '&' && c != '\r';
+	}
+	
+	/**
+	 * Appends the character (or character reference) at <code>i</code> to the text content.
+	 * @return Offset of the next character.
+	 */
+	private int appendChar(CharSequence src, int i, int limit) {
+		char c = src.charAt(i);
+		if (c == '&') {
+			return appendReference(src, i, limit);
+		}
+		if (c == '\r') {
+			// Line breaks are normalised to \n, like an XML parser does
+			appendText('\n');
+			if (i + 1 < limit && src.charAt(i + 1) == '\n') {
+				return i + 2;
+			}
+			return i + 1;
+		}
+		appendText(c);
+		return i + 1;
+	}
+	
+	/**
+	 * Decodes the character reference at <code>amp</code> (eg &amp;amp; &amp;#39; &amp;#x27;).
+	 * Like NekoHTML, a known reference is decoded even without its closing ';'.
+	 * Anything that isn't a known reference is kept as it is.
+	 * @return Offset of the character after the reference.
+	 */
+	private int appendReference(CharSequence src, int amp, int limit) {
+		int nameStart = amp + 1;
+		boolean numeric = (nameStart < limit && src.charAt(nameStart) == '#');
+		if (numeric) {
+			++nameStart;
+		}
+		int nameEnd = nameStart;
+		while (nameEnd < limit && nameEnd - nameStart < MAX_REFERENCE_LENGTH && isReferenceChar(src.charAt(nameEnd))) {
+			++nameEnd;
+		}
+		
+		int codePoint = -1;
+		if (nameEnd > nameStart) {
+			if (numeric) {
+				codePoint = parseCharacterNumber(src, nameStart, nameEnd);
+			}
+			else {
+				codePoint = HTMLEntities.get(src, nameStart, nameEnd);
+			}
+		}
+		if (codePoint < 0) {
+			appendText('&');
+			return amp + 1;
+		}
+		if (Character.isSupplementaryCodePoint(codePoint)) {
+			appendText(Character.highSurrogate(codePoint));
+			appendText(Character.lowSurrogate(codePoint));
+		}
+		else {
+			appendText((char) codePoint);
+		}
+		if (nameEnd < limit && src.charAt(nameEnd) == ';') {
+			return nameEnd + 1;
+		}
+		return nameEnd;
+	}
+	
+	private static boolean isReferenceChar(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9');
+	}
+	
+	private static int parseCharacterNumber(CharSequence src, int start, int end) {
+		int radix = 10;
+		if (start < end && (src.charAt(start) == 'x' || src.charAt(start) == 'X')) {
+			radix = 16;
+			++start;
+		}
+		if (start == end) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < end; ++i) {
+			int digit = Character.digit(src.charAt(i), radix);
+			if (digit < 0) {
+				return -1;
+			}
+			value = value * radix + digit;
+			if (value > Character.MAX_CODE_POINT) {
+				return -1;
+			}
+		}
+		return value;
+	}
+	
+	private void appendText(char c) {
+		text.append(c);
+		if (c > ' ') {
+			hasText = true;
+		}
+	}
+	
+	/**
+	 * Whether a tag, end tag, comment or declaration starts at <code>i</code>.
+	 * A lone '&lt;' (eg "&lt;3") is just text.
+	 */
+	static boolean isTagStart(CharSequence src, int i, int limit) {
+		if (src.charAt(i) != '<' || i + 1 >= limit) {
+			return false;
+		}
+		char c = src.charAt(i + 1);
+		if (c == '/') {
+			return (i + 2 < limit && isLetter(src.charAt(i + 2)));
+		}
+		return isLetter(c) || c == '!' || c == '?';
+	}
+	
+	/**
+	 * Finds the '&gt;' closing the tag starting at <code>start</code>, skipping over quoted attribute values.
+	 * @return Offset of the '&gt;', or -1 if the tag is not complete.
+	 */
+	static int findTagEnd(CharSequence src, int start, int limit) {
+		char quote = 0;
+		for (int i = start + 1; i < limit; ++i) {
+			char c = src.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			}
+			else if (c == '"' || c == '\'') {
+				quote = c;
+			}
+			else if (c == '>') {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds the end of the tag name starting at <code>nameStart</code>.
+	 */
+	static int tagNameEnd(CharSequence src, int nameStart, int tagEnd) {
+		int i = nameStart;
+		while (i < tagEnd) {
+			char c = src.charAt(i);
+			if (c <= ' ' || c == '/' || c == '>') {
+				break;
+			}
+			++i;
+		}
+		return i;
+	}
+	
+	private void openElement(CharSequence src, int nameStart, int tagEnd) {
+		int nameEnd = tagNameEnd(src, nameStart, tagEnd);
+		if (src.charAt(tagEnd - 1) == '/' || isVoidElement(src, nameStart, nameEnd)) {
+			return;
+		}
+		if (depth == openNameStart.length) {
+			openNameStart = grow(openNameStart);
+			openNameLength = grow(openNameLength);
+		}
+		openNameStart[depth] = nameStart;
+		openNameLength[depth] = nameEnd - nameStart;
+		++depth;
+	}
+	
+	/**
+	 * Closes the innermost open element with this name, and any left open inside it.
+	 * End tags that don't match an open element are ignored.
+	 */
+	private void closeElement(CharSequence src, int nameStart, int tagEnd) {
+		int nameEnd = tagNameEnd(src, nameStart, tagEnd);
+		for (int d = depth - 1; d >= 0; --d) {
+			if (nameEquals(src, openNameStart[d], openNameLength[d], src, nameStart, nameEnd - nameStart)) {
+				depth = d;
+				return;
+			}
+		}
+	}
+	
+	private static boolean isVoidElement(CharSequence src, int nameStart, int nameEnd) {
+		for (String name : VOID_ELEMENTS) {
+			if (nameEquals(name, 0, name.length(), src, nameStart, nameEnd - nameStart)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean nameEquals(CharSequence a, int aStart, int aLength, CharSequence b, int bStart, int bLength) {
+		if (aLength != bLength) {
+			return false;
+		}
+		for (int i = 0; i < aLength; ++i) {
+			if (Character.toLowerCase(a.charAt(aStart + i)) != Character.toLowerCase(b.charAt(bStart + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private static int[] grow(int[] a) {
+		int[] b = new int[a.length * 2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+}
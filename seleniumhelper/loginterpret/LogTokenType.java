@@ -0,0 +1,40 @@
+package seleniumhelper.loginterpret;
+
+/**
+ * Kinds of line in a battle log, as classified by the BattleLog lexer.
+ * @author burse
+ */
+public enum LogTokenType {
+	/**
+	 * "Turn (turn number)" heading.
+	 */
+	TURN,
+	/**
+	 * "(owner) sent out (Pokemon)!"
+	 */
+	SWITCH,
+	/**
+	 * "Battle between (player1) and (player2) started!"
+	 */
+	BATTLE_START,
+	/**
+	 * "Format: (format)"
+	 */
+	FORMAT,
+	/**
+	 * A rule clause announced before the battle starts, eg "Sleep Clause: Limit one foe put to sleep"
+	 */
+	CLAUSE,
+	/**
+	 * A player's chat message.
+	 */
+	CHAT,
+	/**
+	 * "(player) won the battle!"
+	 */
+	WIN,
+	/**
+	 * Any other line.
+	 */
+	OTHER
+}
@@ -0,0 +1,73 @@
+package seleniumhelper.loginterpret;
+
+import java.util.Arrays;
+
+/**
+ * Compact, append-only store of the tokens lexed from a battle log.
+ * Each token is a line of the log: its type, where it came from in the log HTML,
+ * where its text is, and the lexer's argument for it (see LogLexer#getArgument).
+ * @author burse
+ */
+final class LogTokens {
+	
+	private static final LogTokenType[] TYPES = LogTokenType.values();
+	
+	private byte[] types = new byte[256];
+	private int[] sourceStart = new int[256];
+	private int[] sourceEnd = new int[256];
+	private int[] textStart = new int[256];
+	private int[] textEnd = new int[256];
+	private int[] arguments = new int[256];
+	private int count;
+	
+	void add(LogTokenType type, int sourceStart, int sourceEnd, int textStart, int textEnd, int argument) {
+		if (count == types.length) {
+			int capacity = count * 2;
+			types = Arrays.copyOf(types, capacity);
+			this.sourceStart = Arrays.copyOf(this.sourceStart, capacity);
+			this.sourceEnd = Arrays.copyOf(this.sourceEnd, capacity);
+			this.textStart = Arrays.copyOf(this.textStart, capacity);
+			this.textEnd = Arrays.copyOf(this.textEnd, capacity);
+			arguments = Arrays.copyOf(arguments, capacity);
+		}
+		types[count] = (byte) type.ordinal();
+		this.sourceStart[count] = sourceStart;
+		this.sourceEnd[count] = sourceEnd;
+		this.textStart[count] = textStart;
+		this.textEnd[count] = textEnd;
+		arguments[count] = argument;
+		++count;
+	}
+	
+	void clear() {
+		count = 0;
+	}
+	
+	int size() {
+		return count;
+	}
+	
+	LogTokenType type(int i) {
+		return TYPES[types[i]];
+	}
+	
+	int sourceStart(int i) {
+		return sourceStart[i];
+	}
+	
+	int sourceEnd(int i) {
+		return sourceEnd[i];
+	}
+	
+	int textStart(int i) {
+		return textStart[i];
+	}
+	
+	int textEnd(int i) {
+		return textEnd[i];
+	}
+	
+	int argument(int i) {
+		return arguments[i];
+	}
+}
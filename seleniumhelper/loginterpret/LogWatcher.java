@@ -0,0 +1,302 @@
+package seleniumhelper.loginterpret;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Watches a battle log for any number of trigger strings at once.<br/>
+ * The triggers are compiled into an Aho-Corasick automaton, and each <code>update</code> only scans
+ * the log text appended since the last one, so checking for every trigger costs the same as
+ * reading the new text once, however many triggers there are and however long the log gets.<br/>
+ * A trigger fires once, the first time its text is in the log; the text may span several updates.
+ * Triggers added part way through a battle also fire on text already in the log, like <code>BattleLog.contains</code>.
+ * @author burse
+ */
+public class LogWatcher {
+	
+	/**
+	 * Called when a trigger's text is found in the log.
+	 */
+	public interface Listener {
+		void triggered(Trigger trigger, BattleLog log);
+	}
+	
+	/**
+	 * A string being watched for.
+	 */
+	public static final class Trigger {
+		private final String text;
+		private final boolean ignoreChats;
+		private final Listener listener;
+		private boolean triggered;
+		
+		private Trigger(String text, boolean ignoreChats, Listener listener) {
+			this.text = text;
+			this.ignoreChats = ignoreChats;
+			this.listener = listener;
+		}
+		
+		public String getText() {
+			return text;
+		}
+		
+		/**
+		 * @return True if the trigger only fires on battle text, not player chat messages.
+		 */
+		public boolean isIgnoringChats() {
+			return ignoreChats;
+		}
+		
+		/**
+		 * @return True once the trigger's text has been found in the log.
+		 */
+		public boolean isTriggered() {
+			return triggered;
+		}
+		
+		public String toString() {
+			return text;
+		}
+	}
+	
+	/**
+	 * State of the automaton: the longest trigger prefix matching the end of the text scanned.
+	 */
+	private static final class Node {
+		private static final Trigger[] NO_TRIGGERS = new Trigger[0];
+		
+		// Edges of the trie, sorted by character
+		char[] chars = new char[0];
+		Node[] next = new Node[0];
+		
+		// Longest proper suffix of this node's prefix that is also a trigger prefix
+		Node fail;
+		
+		// Nearest node along the fail links which has triggers, or null
+		Node output;
+		
+		// Triggers whose text ends here
+		Trigger[] triggers = NO_TRIGGERS;
+		
+		Node child(char c) {
+			int i = Arrays.binarySearch(chars, c);
+			return (i < 0) ? null : next[i];
+		}
+		
+		Node addChild(char c) {
+			int i = Arrays.binarySearch(chars, c);
+			if (i >= 0) {
+				return next[i];
+			}
+			i = -i - 1;
+			Node child = new Node();
+			chars = insert(chars, i, c);
+			Node[] newNext = new Node[next.length + 1];
+			System.arraycopy(next, 0, newNext, 0, i);
+			newNext[i] = child;
+			System.arraycopy(next, i, newNext, i + 1, next.length - i);
+			next = newNext;
+			return child;
+		}
+		
+		private static char[] insert(char[] a, int i, char c) {
+			char[] b = new char[a.length + 1];
+			System.arraycopy(a, 0, b, 0, i);
+			b[i] = c;
+			System.arraycopy(a, i, b, i + 1, a.length - i);
+			return b;
+		}
+	}
+	
+	private final List<Trigger> triggers = new ArrayList<Trigger>();
+	
+	private Node root = new Node();
+	
+	// Whether triggers were added or removed since the automaton was built,
+	// and whether any were added (in which case the whole log needs scanning again)
+	private boolean changed;
+	private boolean added;
+	
+	// Whether any trigger also watches chat messages
+	private boolean watchingChats;
+	
+	// Length of the longest trigger text
+	private int maxLength;
+	
+	// The log text and chat text last scanned, how far they were scanned, and the automaton state at that point
+	private CharSequence text;
+	private CharSequence chat;
+	private int textPosition;
+	private int chatPosition;
+	private Node textState;
+	private Node chatState;
+	
+	/**
+	 * Starts watching for a string.
+	 * @param text The string to watch for.
+	 * @param ignoreChats Set to true to ignore player chat messages.
+	 * @return Trigger - check <code>isTriggered()</code> after an update.
+	 */
+	public Trigger watch(String text, boolean ignoreChats) {
+		return watch(text, ignoreChats, null);
+	}
+	
+	/**
+	 * Starts watching for a string.
+	 * @param text The string to watch for. Must not be empty.
+	 * @param ignoreChats Set to true to ignore player chat messages.
+	 * @param listener Called from <code>update</code> when the string is found. Can be null.
+	 * @return Trigger - check <code>isTriggered()</code> after an update.
+	 */
+	public Trigger watch(String text, boolean ignoreChats, Listener listener) {
+		if (text.length() == 0) {
+			throw new IllegalArgumentException("Trigger text must not be empty");
+		}
+		Trigger trigger = new Trigger(text, ignoreChats, listener);
+		triggers.add(trigger);
+		changed = true;
+		added = true;
+		return trigger;
+	}
+	
+	/**
+	 * Stops watching for a trigger. Does nothing if it isn't being watched.
+	 */
+	public void unwatch(Trigger trigger) {
+		if (triggers.remove(trigger)) {
+			changed = true;
+		}
+	}
+	
+	/**
+	 * @return Triggers being watched for which haven't fired yet.
+	 */
+	public List<Trigger> getTriggers() {
+		List<Trigger> waiting = new ArrayList<Trigger>();
+		for (Trigger trigger : triggers) {
+			if (!trigger.triggered) {
+				waiting.add(trigger);
+			}
+		}
+		return waiting;
+	}
+	
+	/**
+	 * Scans whatever has been added to the log since the last update, firing any triggers found.
+	 * If <code>log</code> is a different log to last time (or has been reset) it is scanned from the start.
+	 * @param log The battle log to watch.
+	 */
+	public void update(BattleLog log) {
+		CharSequence newText = log.textBuffer();
+		CharSequence newChat = log.chatBuffer();
+		if (changed) {
+			compile();
+			if (!added) {
+				// Only triggers were removed: no unfired trigger can end in text already scanned,
+				// so the new automaton's state is found again by rescanning the last few characters.
+				textPosition = Math.max(0, textPosition - maxLength + 1);
+				chatPosition = Math.max(0, chatPosition - maxLength + 1);
+			}
+		}
+		if (newText != text || newChat != chat || added) {
+			text = newText;
+			chat = newChat;
+			textPosition = 0;
+			chatPosition = 0;
+			textState = root;
+			chatState = root;
+			added = false;
+		}
+		textState = scan(log, text, textPosition, textState, false);
+		textPosition = text.length();
+		if (watchingChats) {
+			chatState = scan(log, chat, chatPosition, chatState, true);
+		}
+		chatPosition = chat.length();
+	}
+	
+	/**
+	 * Runs the automaton over src from <code>from</code> to the end.
+	 * @return The state at the end.
+	 */
+	private Node scan(BattleLog log, CharSequence src, int from, Node state, boolean isChat) {
+		int end = src.length();
+		for (int i = from; i < end; ++i) {
+			char c = src.charAt(i);
+			Node next;
+			while ((next = state.child(c)) == null && state != root) {
+				state = state.fail;
+			}
+			state = (next == null) ? root : next;
+			
+			Node match = (state.triggers.length != 0) ? state : state.output;
+			while (match != null) {
+				for (Trigger trigger : match.triggers) {
+					if (!trigger.triggered && !(isChat && trigger.ignoreChats)) {
+						fire(trigger, log);
+					}
+				}
+				match = match.output;
+			}
+		}
+		return state;
+	}
+	
+	private void fire(Trigger trigger, BattleLog log) {
+		trigger.triggered = true;
+		if (trigger.listener != null) {
+			trigger.listener.triggered(trigger, log);
+		}
+	}
+	
+	/**
+	 * Builds the automaton from the triggers that haven't fired yet, and puts it in its start state.
+	 */
+	private void compile() {
+		root = new Node();
+		watchingChats = false;
+		maxLength = 0;
+		for (Trigger trigger : triggers) {
+			if (trigger.triggered) {
+				continue;
+			}
+			Node node = root;
+			for (int i = 0; i < trigger.text.length(); ++i) {
+				node = node.addChild(trigger.text.charAt(i));
+			}
+			Trigger[] ending = Arrays.copyOf(node.triggers, node.triggers.length + 1);
+			ending[ending.length - 1] = trigger;
+			node.triggers = ending;
+			watchingChats |= !trigger.ignoreChats;
+			maxLength = Math.max(maxLength, trigger.text.length());
+		}
+		
+		// Fail links, breadth first so every shorter prefix is linked first
+		LinkedList<Node> queue = new LinkedList<Node>();
+		for (Node child : root.next) {
+			child.fail = root;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			Node node = queue.removeFirst();
+			for (int i = 0; i < node.chars.length; ++i) {
+				char c = node.chars[i];
+				Node child = node.next[i];
+				Node fail = node.fail;
+				Node failChild;
+				while ((failChild = fail.child(c)) == null && fail != root) {
+					fail = fail.fail;
+				}
+				child.fail = (failChild == null) ? root : failChild;
+				child.output = (child.fail.triggers.length != 0) ? child.fail : child.fail.output;
+				queue.add(child);
+			}
+		}
+		
+		textState = root;
+		chatState = root;
+		changed = false;
+	}
+}
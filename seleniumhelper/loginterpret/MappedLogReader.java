@@ -0,0 +1,113 @@
+package seleniumhelper.loginterpret;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads a saved battle log through a memory mapped FileChannel, decoding it a window at a time.
+ * The window is a CharSequence straight over the decoded file, which is fed to the parser
+ * and then reused, so reading a file of any size takes the same small amount of extra memory.
+ * @author burse
+ */
+final class MappedLogReader implements Closeable {
+	
+	/**
+	 * Characters decoded at a time.
+	 */
+	static final int WINDOW_SIZE = 64 * 1024;
+	
+	// Largest region of the file mapped at once
+	private static final long MAX_REGION_SIZE = 256L * 1024 * 1024;
+	
+	private final FileInputStream in;
+	private final FileChannel channel;
+	private final CharsetDecoder decoder;
+	private final CharBuffer window;
+	private final long size;
+	
+	// Where the next region to map starts
+	private long position;
+	
+	// The mapped region being decoded, or null if the next one needs mapping
+	private MappedByteBuffer region;
+	private boolean lastRegion;
+	private boolean finished;
+	
+	/**
+	 * Opens a saved battle log for reading.
+	 * @param file The file to read.
+	 * @param charset The file's character encoding. Malformed input is replaced rather than rejected.
+	 * @throws IOException If the file can't be opened or mapped.
+	 */
+	MappedLogReader(File file, Charset charset) throws IOException {
+		in = new FileInputStream(file);
+		channel = in.getChannel();
+		size = channel.size();
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		window = CharBuffer.allocate(WINDOW_SIZE);
+		window.flip();
+	}
+	
+	/**
+	 * @return Size of the file in bytes.
+	 */
+	long size() {
+		return size;
+	}
+	
+	/**
+	 * Decodes the next window of the file.
+	 * @return The decoded text, valid until the next call, or null at the end of the file.
+	 * @throws IOException If the file can't be mapped.
+	 */
+	CharSequence next() throws IOException {
+		window.clear();
+		while (!finished && window.position() == 0) {
+			if (region == null) {
+				if (position >= size) {
+					if (size == 0) {
+						// Nothing has been decoded, and the decoder can only be flushed once told the input has ended
+						decoder.decode(ByteBuffer.allocate(0), window, true);
+					}
+					decoder.flush(window);
+					finished = true;
+					break;
+				}
+				long regionSize = Math.min(size - position, MAX_REGION_SIZE);
+				region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+				position += regionSize;
+				lastRegion = (position >= size);
+			}
+			CoderResult result = decoder.decode(region, window, lastRegion);
+			if (result.isUnderflow()) {
+				// A character split across two regions is decoded from the start of the next one
+				position -= region.remaining();
+				region = null;
+				if (lastRegion) {
+					position = size;
+				}
+			}
+		}
+		window.flip();
+		if (window.remaining() == 0) {
+			return null;
+		}
+		return window;
+	}
+	
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,66 @@
+package seleniumhelper.loginterpret;
+
+/**
+ * A Pokemon's name as the battle log shows it: "nickname (Species)", or just "Species"
+ * if it has no nickname.<br/>
+ * The species is always the bracketed part at the very end, so nicknames may contain brackets
+ * themselves (eg "Mr (Cool) (Pikachu)" is Pikachu nicknamed "Mr (Cool)").
+ * Names are split with one scan back from the end, never a regex.
+ * @author burse
+ */
+public final class PokemonName {
+	
+	/**
+	 * The Pokemon's nickname, or its species name if it has no nickname.
+	 */
+	public final String nickname;
+	
+	/**
+	 * The Pokemon's species name.
+	 */
+	public final String species;
+	
+	PokemonName(String nickname, String species) {
+		this.nickname = nickname;
+		this.species = species;
+	}
+	
+	/**
+	 * Splits a name into nickname and species.
+	 * @param fullname Either "Species" or "nickname (Species)".
+	 */
+	public static PokemonName parse(String fullname) {
+		int open = speciesStart(fullname, 0, fullname.length());
+		if (open == -1) {
+			return new PokemonName(fullname, fullname);
+		}
+		return new PokemonName(fullname.substring(0, open - 1), fullname.substring(open + 1, fullname.length() - 1));
+	}
+	
+	/**
+	 * Finds the bracket opening the species part of a name in text[start, end):
+	 * the one matching the ')' at the end, which must come after a nickname and a space.
+	 * @return Offset of the '(', or -1 if the whole name is the species.
+	 */
+	public static int speciesStart(CharSequence text, int start, int end) {
+		if (end - start < 4 || text.charAt(end - 1) != ')') {
+			return -1;
+		}
+		int depth = 0;
+		for (int i = end - 1; i > start; --i) {
+			char c = text.charAt(i);
+			if (c == ')') {
+				++depth;
+			}
+			else if (c == '(' && --depth == 0) {
+				// Needs a nickname before it, and something in the brackets
+				return (i - 1 > start && text.charAt(i - 1) == ' ' && i + 2 < end) ? i : -1;
+			}
+		}
+		return -1;
+	}
+	
+	public String toString() {
+		return (nickname.equals(species)) ? species : nickname + " (" + species + ")";
+	}
+}
@@ -0,0 +1,94 @@
+package seleniumhelper.loginterpret;
+
+import java.util.Arrays;
+
+/**
+ * The names of the Pokemon in one battle, parsed once each.<br/>
+ * The same few names are sent out over and over, so each name is looked up straight from
+ * the span of log text it appears in: a hit costs one hash of the span and one probe, and
+ * allocates nothing. Every lookup of a name returns the same PokemonName and Strings,
+ * and species names are shared with every other battle through <code>SymbolTable.SPECIES</code>.
+ * @author burse
+ */
+final class PokemonNameCache {
+	
+	private static final class Entry {
+		final String fullname;
+		final int hash;
+		final PokemonName name;
+		
+		Entry(String fullname, int hash, PokemonName name) {
+			this.fullname = fullname;
+			this.hash = hash;
+			this.name = name;
+		}
+	}
+	
+	// Open addressing, linear probing. Length is a power of 2, kept at most half full.
+	private Entry[] table = new Entry[16];
+	private int size;
+	
+	/**
+	 * Gets the name in text[start, end), parsing it the first time it is seen.
+	 */
+	PokemonName get(CharSequence text, int start, int end) {
+		int hash = CharSequences.hash(text, start, end);
+		int mask = table.length - 1;
+		int i = CharSequences.spread(hash) & mask;
+		Entry e;
+		while ((e = table[i]) != null) {
+			if (e.hash == hash && CharSequences.matches(e.fullname, text, start, end)) {
+				return e.name;
+			}
+			i = (i + 1) & mask;
+		}
+		
+		String fullname = text.subSequence(start, end).toString();
+		int open = PokemonName.speciesStart(fullname, 0, fullname.length());
+		PokemonName name;
+		if (open == -1) {
+			String species = SymbolTable.SPECIES.intern(fullname);
+			name = new PokemonName(species, species);
+		}
+		else {
+			name = new PokemonName(fullname.substring(0, open - 1),
+					SymbolTable.SPECIES.intern(fullname, open + 1, fullname.length() - 1));
+		}
+		table[i] = new Entry(fullname, hash, name);
+		if (++size * 2 > table.length) {
+			grow();
+		}
+		return name;
+	}
+	
+	/**
+	 * @return Number of different names seen.
+	 */
+	int size() {
+		return size;
+	}
+	
+	void clear() {
+		Arrays.fill(table, null);
+		size = 0;
+	}
+	
+	private void insert(Entry e) {
+		int mask = table.length - 1;
+		int i = CharSequences.spread(e.hash) & mask;
+		while (table[i] != null) {
+			i = (i + 1) & mask;
+		}
+		table[i] = e;
+	}
+	
+	private void grow() {
+		Entry[] old = table;
+		table = new Entry[old.length * 2];
+		for (Entry e : old) {
+			if (e != null) {
+				insert(e);
+			}
+		}
+	}
+}
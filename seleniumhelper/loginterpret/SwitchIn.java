@@ -0,0 +1,38 @@
+package seleniumhelper.loginterpret;
+
+/**
+ * One Pokemon being sent out onto the field, as recorded in the battle log.
+ * @author burse
+ */
+public final class SwitchIn {
+	/**
+	 * The turn during which the Pokemon was sent out, numbered as in the turn's heading. Turn 0 is the lead.
+	 */
+	public final int turn;
+	
+	/**
+	 * Nickname of the Pokemon, or its species name if it has no nickname.
+	 */
+	public final String nickname;
+	
+	/**
+	 * Species name of the Pokemon.
+	 */
+	public final String species;
+	
+	/**
+	 * <code>SymbolTable.SPECIES</code> symbol of the species.
+	 */
+	public final int speciesSymbol;
+	
+	public SwitchIn(int turn, String nickname, String species) {
+		this.turn = turn;
+		this.nickname = nickname;
+		this.speciesSymbol = SymbolTable.SPECIES.symbol(species);
+		this.species = SymbolTable.SPECIES.name(speciesSymbol);
+	}
+	
+	public String toString() {
+		return "Turn " + turn + ": " + nickname + " (" + species + ")";
+	}
+}
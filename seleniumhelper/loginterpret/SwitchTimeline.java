@@ -0,0 +1,51 @@
+package seleniumhelper.loginterpret;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every Pokemon one player has sent out, in the order they were sent out.
+ * Answers "what was on the field at the start of turn x" with a binary search.
+ * @author burse
+ */
+final class SwitchTimeline {
+	
+	// Turn of each switch in, never decreasing
+	private int[] turns = new int[16];
+	private SwitchIn[] switchIns = new SwitchIn[16];
+	private int count;
+	
+	void add(SwitchIn switchIn) {
+		if (count == turns.length) {
+			turns = Arrays.copyOf(turns, count * 2);
+			switchIns = Arrays.copyOf(switchIns, count * 2);
+		}
+		turns[count] = switchIn.turn;
+		switchIns[count] = switchIn;
+		++count;
+	}
+	
+	/**
+	 * @return The last Pokemon sent out before <code>turn</code> started, or null if there isn't one.
+	 */
+	SwitchIn atStartOf(int turn) {
+		// Find the first switch in during or after turn; the one before it is what we want
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (turns[mid] < turn) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return (low == 0) ? null : switchIns[low - 1];
+	}
+	
+	List<SwitchIn> getHistory() {
+		return new ArrayList<SwitchIn>(Arrays.asList(switchIns).subList(0, count));
+	}
+}
@@ -0,0 +1,229 @@
+package seleniumhelper.loginterpret;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps names to small int symbols, and symbols back to names, so the same few hundred names
+ * can be kept as ints (eg in int arrays) and every String for a name is the same instance.<br/>
+ * The shared tables hold the kinds of name there are only so many of, and are used by every battle.
+ * Species names are kept as shown; moves, items and abilities by their Showdown id (eg "leechseed"),
+ * so names from the log and from the battle client agree. Names with no limit to them, like player names,
+ * belong in a table made for the battle, so they are dropped along with it.
+ * Symbols are numbered from 0 in the order names are first seen.<br/>
+ * Looking up a known name takes no locks and allocates nothing; adding one takes a lock, and the table
+ * grows in place, so adding n names takes O(n) time.
+ * @author burse
+ */
+public final class SymbolTable {
+	
+	/**
+	 * Symbol standing for no name (eg no item), returned for null.
+	 */
+	public static final int NONE = -1;
+	
+	public static final SymbolTable SPECIES = new SymbolTable("species");
+	public static final SymbolTable MOVES = new SymbolTable("moves");
+	public static final SymbolTable ITEMS = new SymbolTable("items");
+	public static final SymbolTable ABILITIES = new SymbolTable("abilities");
+	
+	private static final String HIDDEN_POWER = "hiddenpower";
+	
+	/**
+	 * A name and its symbol. Never changed, so a reader racing an add sees either no entry or a whole one.
+	 */
+	private static final class Entry {
+		final String name;
+		final int symbol;
+		
+		Entry(String name, int symbol) {
+			this.name = name;
+			this.symbol = symbol;
+		}
+	}
+	
+	private final String kind;
+	
+	// Open addressing table of names to symbols. Entries are added in place; when it fills up,
+	// a bigger table is built and then published. Entries added in place aren't published by a volatile write,
+	// so a reader can find a symbol before it sees the size counting it; such symbols are looked up again under the lock.
+	private volatile Entry[] entries = new Entry[64];
+	
+	// Name of each symbol, up to size. Writing size publishes the names before it.
+	private volatile String[] names = new String[32];
+	private volatile int size;
+	
+	/**
+	 * Makes an empty table, eg for the names in one battle.
+	 * @param kind What the names are, for messages.
+	 */
+	public SymbolTable(String kind) {
+		this.kind = kind;
+	}
+	
+	/**
+	 * Gets the symbol for a name, adding the name if it is new.
+	 * @return The symbol, or NONE if name is null.
+	 */
+	public int symbol(String name) {
+		if (name == null) {
+			return NONE;
+		}
+		return symbol(name, 0, name.length());
+	}
+	
+	/**
+	 * Gets the symbol for the name in text[start, end), adding the name if it is new.
+	 */
+	public int symbol(CharSequence text, int start, int end) {
+		int hash = CharSequences.hash(text, start, end);
+		int found = find(entries, text, start, end, hash);
+		// Only trust a symbol whose name is visible; otherwise the lock makes it so
+		if (found != NONE && found < size) {
+			return found;
+		}
+		return add(text.subSequence(start, end).toString(), hash);
+	}
+	
+	/**
+	 * Gets the symbol for a name without adding it.
+	 * @return The symbol, or NONE if the name hasn't been seen.
+	 */
+	public int find(String name) {
+		if (name == null) {
+			return NONE;
+		}
+		int hash = CharSequences.hash(name, 0, name.length());
+		int found = find(entries, name, 0, name.length(), hash);
+		if (found == NONE || found < size) {
+			return found;
+		}
+		synchronized (this) {
+			return find(entries, name, 0, name.length(), hash);
+		}
+	}
+	
+	/**
+	 * @return The name of a symbol, or null for NONE.
+	 * @throws IndexOutOfBoundsException If there is no such symbol.
+	 */
+	public String name(int symbol) {
+		if (symbol == NONE) {
+			return null;
+		}
+		// Read size first, so the names up to it are visible
+		if (symbol < 0 || symbol >= size) {
+			throw new IndexOutOfBoundsException("No " + kind + " symbol " + symbol);
+		}
+		return names[symbol];
+	}
+	
+	/**
+	 * @return The one shared String for a name (null for null).
+	 */
+	public String intern(String name) {
+		return name(symbol(name));
+	}
+	
+	/**
+	 * @return The one shared String for the name in text[start, end).
+	 */
+	public String intern(CharSequence text, int start, int end) {
+		return name(symbol(text, start, end));
+	}
+	
+	/**
+	 * @return Symbols for each name, in order.
+	 */
+	public int[] symbols(List<String> names) {
+		int[] symbols = new int[names.size()];
+		for (int i = 0; i < symbols.length; ++i) {
+			symbols[i] = symbol(names.get(i));
+		}
+		return symbols;
+	}
+	
+	/**
+	 * @return Number of names in the table; symbols are [0, size).
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public String toString() {
+		return kind + " (" + size() + " names)";
+	}
+	
+	/**
+	 * Converts a move's name, or the battle client's id for it, to the id it is kept by in <code>MOVES</code>:
+	 * lower case letters and digits only (eg "Sunny Day" to "sunnyday"). Every Hidden Power is just "hiddenpower",
+	 * as the battle log doesn't say which type it is.
+	 * @return The id, or null for null.
+	 */
+	public static String moveId(String move) {
+		if (move == null) {
+			return null;
+		}
+		StringBuilder id = new StringBuilder(move.length());
+		for (int i = 0; i < move.length(); ++i) {
+			char c = Character.toLowerCase(move.charAt(i));
+			if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+				id.append(c);
+			}
+		}
+		if (id.length() > HIDDEN_POWER.length() && id.indexOf(HIDDEN_POWER) == 0) {
+			return HIDDEN_POWER;
+		}
+		return id.toString();
+	}
+	
+	private static int find(Entry[] table, CharSequence text, int start, int end, int hash) {
+		int mask = table.length - 1;
+		Entry entry;
+		for (int i = CharSequences.spread(hash) & mask; (entry = table[i]) != null; i = (i + 1) & mask) {
+			if (CharSequences.matches(entry.name, text, start, end)) {
+				return entry.symbol;
+			}
+		}
+		return NONE;
+	}
+	
+	private synchronized int add(String name, int hash) {
+		Entry[] table = entries;
+		// Another thread may have added it since
+		int found = find(table, name, 0, name.length(), hash);
+		if (found != NONE) {
+			return found;
+		}
+		int symbol = size;
+		if (symbol == names.length) {
+			names = Arrays.copyOf(names, symbol * 2);
+		}
+		names[symbol] = name;
+		// The name is published before the symbol can be found
+		size = symbol + 1;
+		if ((symbol + 1) * 2 > table.length) {
+			Entry[] grown = new Entry[table.length * 2];
+			for (Entry entry : table) {
+				if (entry != null) {
+					insert(grown, entry);
+				}
+			}
+			insert(grown, new Entry(name, symbol));
+			entries = grown;
+		}
+		else {
+			insert(table, new Entry(name, symbol));
+		}
+		return symbol;
+	}
+	
+	private static void insert(Entry[] table, Entry entry) {
+		int mask = table.length - 1;
+		int i = CharSequences.spread(entry.name.hashCode()) & mask;
+		while (table[i] != null) {
+			i = (i + 1) & mask;
+		}
+		table[i] = entry;
+	}
+}
@@ -0,0 +1,71 @@
+package seleniumhelper.loginterpret;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded, least recently used cache of interpreted turns for a BattleLog.
+ * Completed turns never change, so their TurnInfo only needs to be
+ * worked out once; the open turn is invalidated whenever new log content arrives.
+ * @author burse
+ */
+final class TurnCache {
+	
+	private final LinkedHashMap<Integer, TurnInfo> entries;
+	
+	private long hits;
+	private long misses;
+	
+	/**
+	 * @param maxTurns The most turns to keep cached at once.
+	 */
+	TurnCache(final int maxTurns) {
+		entries = new LinkedHashMap<Integer, TurnInfo>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			protected boolean removeEldestEntry(Map.Entry<Integer, TurnInfo> eldest) {
+				return size() > maxTurns;
+			}
+		};
+	}
+	
+	/**
+	 * @return Cached TurnInfo of the turn, or null if it isn't cached.
+	 */
+	TurnInfo getTurnInfo(int turn) {
+		return count(entries.get(turn));
+	}
+	
+	void putTurnInfo(int turn, TurnInfo turnInfo) {
+		entries.put(turn, turnInfo);
+	}
+	
+	/**
+	 * Drops everything cached for the specified turn.
+	 */
+	void invalidate(int turn) {
+		entries.remove(turn);
+	}
+	
+	void clear() {
+		entries.clear();
+	}
+	
+	long getHits() {
+		return hits;
+	}
+	
+	long getMisses() {
+		return misses;
+	}
+	
+	private <T> T count(T value) {
+		if (value == null) {
+			++misses;
+		}
+		else {
+			++hits;
+		}
+		return value;
+	}
+}
@@ -1,11 +1,9 @@
 package seleniumhelper.loginterpret;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
 
 import seleniumhelper.loginterpret.events.TIEvent;
+import seleniumhelper.loginterpret.events.TurnLines;
 
 public class TurnInfo {
 	
@@ -33,16 +31,20 @@ public class TurnInfo {
 	}
 	
 	private void interpret() {
-		List<String> strEvents = Arrays.asList(turnHTML.replaceAll("(</h2>|</div>)", "$1\n").split("\n"));
-		Iterator<String> itr = strEvents.iterator();
-		while (itr.hasNext()) {
-			TIEvent event = TIEvent.create(itr);
+		TurnLines lines = new TurnLines(turnHTML);
+		while (lines.hasNext()) {
+			TIEvent event = TIEvent.create(lines);
 			if (event != null) {
 				events.add(event);
 			}
 		}
 	}
 	
+	/**
+	 * Gets the events of the turn.
+	 * To scan many turns without keeping their events, use an EventCursor instead.
+	 * @return TIEvent ArrayList - events, in the order they happened.
+	 */
 	public ArrayList<TIEvent> getEvents() {
 		return events;
 	}
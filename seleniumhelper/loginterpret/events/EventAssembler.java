@@ -0,0 +1,154 @@
+package seleniumhelper.loginterpret.events;
+
+import java.util.List;
+
+/**
+ * Reads TIEvents out of battle log HTML as it arrives, instead of a whole turn at a time.<br/>
+ * Append each new chunk of a turn's HTML as it is received. Lines are classified with EVENTMAP
+ * as soon as they are complete, and each event is handed out as soon as its last line arrives:
+ * at once for one line events, after the lines it needs for longer ones, and at the next spacer
+ * or heading for <code>TIEventData.REQUIRES_UNTIL_SPACER</code> ones. Lines and events may span
+ * any number of chunks. Ending the turn completes whatever is still waiting for lines.<br/>
+ * The events are exactly those <code>TurnInfo</code> creates from the whole turn's HTML, and no line is read twice.
+ * @author burse
+ */
+public final class EventAssembler {
+	
+	// Text the chunks are appended to
+	private CharSequence text;
+	
+	// Start of the line not yet complete, and how far it has been scanned for its end
+	private int lineStart;
+	private int scanned;
+	
+	// EVENTMAP entry of the event waiting for more lines, or null
+	private TIEventData pending;
+	private int pendingStart;
+	private int pendingEnd;
+	
+	// Lines the pending event still needs, or -1 if it needs lines up to a spacer
+	private int linesNeeded;
+	
+	private final TurnLines.LineView view = new TurnLines.LineView();
+	
+	/**
+	 * Forgets any partly read line or event, ready to read a new log.
+	 */
+	public void reset() {
+		text = null;
+		lineStart = 0;
+		scanned = 0;
+		pending = null;
+	}
+	
+	/**
+	 * Reads newly received HTML.
+	 * @param text Text the HTML has been appended to. Must be the same text each time until <code>reset</code>,
+	 * and must only ever be appended to.
+	 * @param from Offset in text where the new HTML starts: the end of the previous chunk.
+	 * @param to Offset in text where the new HTML ends.
+	 * @param completed Events completed by the new HTML are added to this, in order.
+	 */
+	public void append(CharSequence text, int from, int to, List<TIEvent> completed) {
+		if (this.text != text) {
+			this.text = text;
+			lineStart = from;
+			scanned = from;
+		}
+		int i = scanned;
+		while (i < to) {
+			char c = text.charAt(i);
+			int tagLength;
+			if (c == '\n') {
+				readLine(lineStart, i, completed);
+				lineStart = ++i;
+			}
+			else if ((tagLength = TurnLines.closingTagLength(text, i, to)) > 0) {
+				i += tagLength;
+				readLine(lineStart, i, completed);
+				lineStart = i;
+			}
+			else {
+				++i;
+			}
+		}
+		// A closing tag might be cut off at the end of the chunk, so scan its start again next time
+		scanned = Math.max(lineStart, Math.min(i, to - (EventText.DIV_END.length() - 1)));
+	}
+	
+	/**
+	 * Ends the turn: its last line is complete, and so is any event waiting for more lines.
+	 * @param to Offset in text where the turn ends. Everything before it must have been appended.
+	 * @param completed Events completed by the end of the turn are added to this.
+	 */
+	public void endTurn(int to, List<TIEvent> completed) {
+		if (text != null) {
+			readLine(lineStart, to, completed);
+			if (pending != null) {
+				complete(completed);
+			}
+		}
+		lineStart = to;
+		scanned = to;
+	}
+	
+	/**
+	 * @return True if an event has started but is waiting for more lines.
+	 */
+	public boolean isWaiting() {
+		return pending != null;
+	}
+	
+	/**
+	 * Reads one line, just as <code>TurnLines.readEvent</code> would in the whole turn.
+	 */
+	private void readLine(int start, int end, List<TIEvent> completed) {
+		if (start == end) {
+			return;
+		}
+		if (pending != null) {
+			if (linesNeeded == -1) {
+				// The spacer or heading ending the event is read with it, and dropped
+				if (!TurnLines.isSpacerOrHeading(text, start, end)) {
+					pendingEnd = end;
+				}
+				else {
+					complete(completed);
+				}
+				return;
+			}
+			pendingEnd = end;
+			if (--linesNeeded == 0) {
+				complete(completed);
+			}
+			return;
+		}
+		
+		TIEventData eventData = TIEvent.getEventData(TIEvent.findEventByMatch(view.set(text, start, end)));
+		
+		// eventData.factory being null means we skip this line
+		if (eventData.factory == null) {
+			return;
+		}
+		pending = eventData;
+		pendingStart = start;
+		pendingEnd = end;
+		if (eventData.linesRequired == TIEventData.REQUIRES_UNTIL_SPACER) {
+			linesNeeded = -1;
+		}
+		else {
+			// linesRequired-1 because we already have the first line
+			linesNeeded = eventData.linesRequired - 1;
+			if (linesNeeded <= 0) {
+				complete(completed);
+			}
+		}
+	}
+	
+	private void complete(List<TIEvent> completed) {
+		// The event gets its own copy of its text, as the log text keeps growing
+		String eventText = text.subSequence(pendingStart, pendingEnd).toString();
+		completed.add(pending.factory.create(eventText, 0, eventText.length()));
+		pending = null;
+	}
+}
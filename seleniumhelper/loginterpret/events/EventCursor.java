@@ -0,0 +1,169 @@
+package seleniumhelper.loginterpret.events;
+
+/**
+ * Flyweight alternative to <code>TurnInfo.getEvents()</code> for scanning many turns:
+ * one mutable cursor moves over the events of a turn without creating any TIEvent objects.
+ * Reset it onto each turn in turn; once its buffers have grown to fit the largest turn,
+ * scanning allocates nothing.<br/>
+ * Everything the cursor returns is only valid until it moves.
+ * <pre>
+ * EventCursor cursor = new EventCursor();
+ * for (int i = 0; i &lt;= log.getTurnCount(); ++i) {
+ *     log.readTurn(log.getTurnNumber(i), cursor);
+ *     while (cursor.next()) {
+ *         counts[cursor.eventType()]++;
+ *     }
+ * }
+ * </pre>
+ * @author burse
+ */
+public final class EventCursor {
+	
+	private final TurnLines lines = new TurnLines("");
+	
+	// EVENTMAP entry of the current event, or null before the first event
+	private TIEventData eventData;
+	private int eventType = -1;
+	
+	private int start;
+	private int end;
+	
+	private final SpanView span = new SpanView();
+	
+	// Event reused for each EVENTMAP entry by event(), made the first time it's needed
+	private final TIEvent[] flyweights = new TIEvent[TIEvent.EVENTMAP.length];
+	
+	/**
+	 * CharSequence over the current event's text. Reused for every event.
+	 */
+	private final class SpanView implements CharSequence {
+		public int length() {
+			return end - start;
+		}
+		
+		public char charAt(int index) {
+			return lines.getText().charAt(start + index);
+		}
+		
+		public CharSequence subSequence(int from, int to) {
+			return lines.getText().subSequence(start + from, start + to);
+		}
+		
+		public String toString() {
+			return lines.getText().subSequence(start, end).toString();
+		}
+	}
+	
+	/**
+	 * Moves the cursor to just before the first event of a turn.
+	 * @param turnHTML HTML of the turn (eg <code>BattleLog.getTurnHTML</code>).
+	 */
+	public void reset(CharSequence turnHTML) {
+		reset(turnHTML, 0, turnHTML.length());
+	}
+	
+	/**
+	 * Moves the cursor to just before the first event of a turn within some larger text,
+	 * so the turn doesn't have to be copied out of it first.
+	 * @param text Text containing the HTML of the turn. Offsets returned are into this text.
+	 * @param turnStart Offset in text where the turn starts.
+	 * @param turnEnd Offset in text where the turn ends.
+	 */
+	public void reset(CharSequence text, int turnStart, int turnEnd) {
+		lines.reset(text, turnStart, turnEnd);
+		eventData = null;
+		eventType = -1;
+		start = turnStart;
+		end = turnStart;
+	}
+	
+	/**
+	 * Moves to the next event in the turn, skipping lines which aren't events, exactly as <code>TurnInfo</code> does.
+	 * @return False if there are no more events in the turn.
+	 */
+	public boolean next() {
+		while (lines.hasNext()) {
+			TIEventData ted = lines.readEvent();
+			if (ted.factory != null) {
+				eventData = ted;
+				eventType = lines.eventIndex();
+				start = lines.eventStart();
+				end = lines.eventEnd();
+				return true;
+			}
+		}
+		eventData = null;
+		eventType = -1;
+		return false;
+	}
+	
+	/**
+	 * @return Index in <code>TIEvent.EVENTMAP</code> of the current event's entry.
+	 */
+	public int eventType() {
+		return eventType;
+	}
+	
+	/**
+	 * @return <code>TIEvent.EVENTMAP</code> entry of the current event.
+	 */
+	public TIEventData eventData() {
+		return eventData;
+	}
+	
+	/**
+	 * @return The current event's HTML. The same CharSequence is reused for every event.
+	 */
+	public CharSequence textSpan() {
+		return span;
+	}
+	
+	/**
+	 * @return Offset where the current event starts, in the text the cursor was reset with.
+	 */
+	public int start() {
+		return start;
+	}
+	
+	/**
+	 * @return Offset just past the end of the current event, in the text the cursor was reset with.
+	 */
+	public int end() {
+		return end;
+	}
+	
+	/**
+	 * @return Number of lines of the log making up the current event.
+	 */
+	public int lineCount() {
+		return lines.eventLineCount();
+	}
+	
+	/**
+	 * Gets the current event as a TIEvent, without creating one: a single event of each
+	 * class is pointed at each event in turn. Its typed fields are decoded when first asked for.
+	 * @return TIEvent subclass, as <code>TurnInfo</code> would have created. Only valid until the cursor moves;
+	 * use <code>create</code> to keep it.
+	 */
+	public TIEvent event() {
+		TIEvent event = flyweights[eventType];
+		if (event == null) {
+			event = eventData.factory.create(lines.getText(), start, end);
+			flyweights[eventType] = event;
+		}
+		else {
+			event.reset(lines.getText(), start, end);
+		}
+		return event;
+	}
+	
+	/**
+	 * Creates a TIEvent for the current event, for when one needs to be kept.
+	 * The event gets its own copy of its text, so it stays valid after the cursor moves.
+	 * @return TIEvent subclass, as <code>TurnInfo</code> would have created.
+	 */
+	public TIEvent create() {
+		String text = span.toString();
+		return eventData.factory.create(text, 0, text.length());
+	}
+}
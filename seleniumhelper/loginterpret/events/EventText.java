@@ -0,0 +1,143 @@
+package seleniumhelper.loginterpret.events;
+
+/**
+ * Helpers for decoding fields out of an event's span of battle log HTML without regexes.
+ * @author burse
+ */
+final class EventText {
+	
+	static final String DIV_START = "<div>";
+	static final String DIV_END = "</div>";
+	static final String FOE_PREFIX = "The foe's ";
+	
+	private EventText() {
+	}
+	
+	static boolean regionMatches(CharSequence text, int start, int limit, String s) {
+		if (start < 0 || start + s.length() > limit) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); ++i) {
+			if (text.charAt(start + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return Offset of the first s in text[from, limit), or -1 if there isn't one.
+	 */
+	static int indexOf(CharSequence text, String s, int from, int limit) {
+		char first = s.charAt(0);
+		for (int i = from; i + s.length() <= limit; ++i) {
+			if (text.charAt(i) == first && regionMatches(text, i, limit, s)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return Offset of the last s in text[from, limit), or -1 if there isn't one.
+	 */
+	static int lastIndexOf(CharSequence text, String s, int from, int limit) {
+		for (int i = limit - s.length(); i >= from; --i) {
+			if (regionMatches(text, i, limit, s)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return Offset just past the "&lt;div&gt;" starting the line containing <code>i</code>, or <code>from</code> if there isn't one.
+	 */
+	static int lineContentStart(CharSequence text, int from, int i) {
+		for (int j = i - 1; j >= from; --j) {
+			if (regionMatches(text, j, i, DIV_START)) {
+				return j + DIV_START.length();
+			}
+		}
+		return from;
+	}
+	
+	/**
+	 * Decodes the HTML text in text[start, end): character references are replaced with the
+	 * characters they stand for.
+	 */
+	static String decode(CharSequence text, int start, int end) {
+		StringBuilder decoded = null;
+		for (int i = start; i < end; ++i) {
+			char c = text.charAt(i);
+			if (c == '&') {
+				int semicolon = indexOf(text, ";", i, Math.min(end, i + 10));
+				if (semicolon != -1) {
+					int codePoint = reference(text, i + 1, semicolon);
+					if (codePoint >= 0) {
+						if (decoded == null) {
+							decoded = new StringBuilder(end - start);
+							decoded.append(text, start, i);
+						}
+						decoded.appendCodePoint(codePoint);
+						i = semicolon;
+						continue;
+					}
+				}
+			}
+			if (decoded != null) {
+				decoded.append(c);
+			}
+		}
+		if (decoded == null) {
+			return text.subSequence(start, end).toString();
+		}
+		return decoded.toString();
+	}
+	
+	/**
+	 * Decodes the character reference name or number between '&amp;' and ';'.
+	 * @return The character, or -1 if it isn't one innerHTML produces.
+	 */
+	private static int reference(CharSequence text, int start, int end) {
+		if (regionMatches(text, start, end, "amp") && end - start == 3) {
+			return '&';
+		}
+		if (regionMatches(text, start, end, "lt") && end - start == 2) {
+			return '<';
+		}
+		if (regionMatches(text, start, end, "gt") && end - start == 2) {
+			return '>';
+		}
+		if (regionMatches(text, start, end, "quot") && end - start == 4) {
+			return '"';
+		}
+		if (regionMatches(text, start, end, "nbsp") && end - start == 4) {
+			return '\u00a0';
+		}
+		if (start < end && text.charAt(start) == '#') {
+			int value = parseInt(text, start + 1, end);
+			return (value > Character.MAX_CODE_POINT) ? -1 : value;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Parses the decimal digits in text[start, end).
+	 * @return The number, or -1 if there are no digits or something other than digits.
+	 */
+	static int parseInt(CharSequence text, int start, int end) {
+		if (start >= end) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < end; ++i) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9' || value > 100000000) {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+}
@@ -0,0 +1,333 @@
+package seleniumhelper.loginterpret.events;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import seleniumhelper.loginterpret.SymbolTable;
+
+/**
+ * Reads TIEvents out of the raw Showdown battle protocol, as an alternative to the battle log HTML.<br/>
+ * The protocol is one message per line, with pipe separated fields (eg "|switch|p1a: Hard|Ninetales, F|100/100").
+ * Lines are split on the pipes rather than matched against regexes, and are much shorter than the HTML
+ * the client renders them to. They are turned into the same events <code>TurnInfo</code> makes from the log:
+ * <ul>
+ * <li>|switch| and |drag| - <code>TISwitchEvent</code>, or <code>TIChangeEvent</code> if the side had a Pokemon out</li>
+ * <li>|move| - <code>TIMoveEvent</code></li>
+ * <li>|-damage| - <code>TIDamageEvent</code>, with the health lost worked out from the previous health</li>
+ * <li>|faint| - <code>TIFaintEvent</code></li>
+ * <li>any other battle message - <code>TIUnknownEvent</code></li>
+ * </ul>
+ * Chat, room and set up messages (|c|, |j|, |player|, |turn| etc.) aren't events. Each event's text is its protocol line.
+ * Append text as it is received; a line is read once it is complete.
+ * @author burse
+ */
+public final class ProtocolParser {
+	
+	// Messages which aren't battle events
+	private static final String[] SKIPPED = {
+		"", "c", "c:", "chat", "j", "J", "join", "l", "L", "leave", "n", "N", "name", "t:", "timestamp", ":",
+		"player", "gametype", "gen", "tier", "rule", "rated", "teamsize", "teampreview", "clearpoke", "poke",
+		"start", "init", "title", "request", "inactive", "inactiveoff", "raw", "html", "upkeep", "turn", "spectator"
+	};
+	
+	static {
+		Arrays.sort(SKIPPED);
+	}
+	
+	private final String userName;
+	
+	// Text appended but not yet read as lines
+	private final StringBuilder buffer = new StringBuilder();
+	
+	// Start and end of each field of the line being read, in buffer
+	private int[] fieldStarts = new int[8];
+	private int[] fieldEnds = new int[8];
+	private int fieldCount;
+	
+	// Player names by side ("p1", "p2"), and which side is ours
+	private final Map<String, String> players = new HashMap<String, String>();
+	private String mySide;
+	
+	// Names seen in this battle, so each is read from the buffer into a String once
+	private SymbolTable playerNames;
+	private SymbolTable nicknames;
+	
+	// Nickname of the Pokemon each side has out, by side
+	private final Map<String, String> active = new HashMap<String, String>();
+	
+	// Last known [hp, maxhp] of each Pokemon, by "side: nickname"
+	private final Map<String, int[]> health = new HashMap<String, int[]>();
+	
+	private int turn;
+	private String winner;
+	
+	/**
+	 * @param userName Our user name, to tell which side's events are the foe's.
+	 * If neither player has it (eg when spectating), p2 is the foe, as the client shows it.
+	 */
+	public ProtocolParser(String userName) {
+		this.userName = userName;
+		reset();
+	}
+	
+	/**
+	 * Forgets everything read, ready to read another battle.
+	 */
+	public void reset() {
+		buffer.setLength(0);
+		players.clear();
+		mySide = "p1";
+		playerNames = new SymbolTable("players");
+		nicknames = new SymbolTable("nicknames");
+		active.clear();
+		health.clear();
+		turn = 0;
+		winner = null;
+	}
+	
+	/**
+	 * Reads newly received protocol text.
+	 * @param text One or more protocol lines. A last line without a line break is held back until it is complete.
+	 * @param completed Events read are added to this, in order.
+	 */
+	public void append(CharSequence text, List<TIEvent> completed) {
+		buffer.append(text);
+		int lineStart = 0;
+		for (int i = 0; i < buffer.length(); ++i) {
+			if (buffer.charAt(i) == '\n') {
+				readLine(lineStart, i, completed);
+				lineStart = i + 1;
+			}
+		}
+		buffer.delete(0, lineStart);
+	}
+	
+	/**
+	 * @return The number of the turn in progress, from the last "|turn|" message; 0 before the first.
+	 */
+	public int getTurn() {
+		return turn;
+	}
+	
+	/**
+	 * @param side "p1" or "p2".
+	 * @return Name of the player on the side, or null if the protocol hasn't said yet.
+	 */
+	public String getPlayerName(String side) {
+		return players.get(side);
+	}
+	
+	/**
+	 * @return Name of the player who won, or null if the battle isn't over (or was a tie).
+	 */
+	public String getWinner() {
+		return winner;
+	}
+	
+	private void readLine(int start, int end, List<TIEvent> completed) {
+		if (end > start && buffer.charAt(end - 1) == '\r') {
+			--end;
+		}
+		// Lines which don't start with a pipe are plain messages shown in the log, except the room id (">room")
+		if (start == end || buffer.charAt(start) != '|') {
+			if (start != end && buffer.charAt(start) != '>') {
+				String line = buffer.substring(start, end);
+				completed.add(new TIUnknownEvent(line, 0, line.length()));
+			}
+			return;
+		}
+		split(start + 1, end);
+		String type = field(0);
+		if (type.equals("player")) {
+			readPlayer();
+		}
+		else if (type.equals("turn")) {
+			int number = EventText.parseInt(buffer, fieldStarts[1], fieldEnds[1]);
+			if (number != -1) {
+				turn = number;
+			}
+		}
+		else if (type.equals("win")) {
+			winner = field(1);
+		}
+		if (Arrays.binarySearch(SKIPPED, type) >= 0) {
+			return;
+		}
+		
+		String line = buffer.substring(start, end);
+		TIEvent event;
+		if ((type.equals("switch") || type.equals("drag")) && fieldCount >= 3) {
+			event = readSwitch(line, type.equals("switch"));
+		}
+		else if (type.equals("move") && fieldCount >= 3) {
+			TIMoveEvent move = new TIMoveEvent(line, 0, line.length());
+			move.set(nickname(1), isFoe(1), field(2));
+			event = move;
+		}
+		else if (type.equals("-damage") && fieldCount >= 3) {
+			TIDamageEvent damage = new TIDamageEvent(line, 0, line.length());
+			damage.set(nickname(1), isFoe(1), readDamage());
+			event = damage;
+		}
+		else if (type.equals("faint") && fieldCount >= 2) {
+			TIFaintEvent faint = new TIFaintEvent(line, 0, line.length());
+			faint.set(nickname(1), isFoe(1));
+			// What is sent out next replaces it, rather than being switched in for it
+			active.remove(side(1));
+			event = faint;
+		}
+		else {
+			if ((type.equals("-heal") || type.equals("-sethp")) && fieldCount >= 3) {
+				updateHealth(pokemonKey(1), 2);
+			}
+			event = new TIUnknownEvent(line, 0, line.length());
+		}
+		completed.add(event);
+	}
+	
+	/**
+	 * "|player|p1|name|avatar" - a player joining a side.
+	 */
+	private void readPlayer() {
+		if (fieldCount < 3 || fieldEnds[2] == fieldStarts[2]) {
+			return;
+		}
+		String side = field(1);
+		String name = playerNames.intern(buffer, fieldStarts[2], fieldEnds[2]);
+		players.put(side, name);
+		if (name.equals(userName)) {
+			mySide = side;
+		}
+	}
+	
+	/**
+	 * "|switch|p1a: nickname|Species, L50, F|hp/maxhp status"
+	 * @param switched False if the Pokemon was forced out (eg by Roar), so nothing was called back.
+	 */
+	private TIEvent readSwitch(String line, boolean switched) {
+		String side = side(1);
+		String nickname = nickname(1);
+		String details = field(2);
+		int comma = details.indexOf(',');
+		String species = (comma == -1) ? details : details.substring(0, comma);
+		String owner = players.get(side);
+		if (owner == null) {
+			owner = side;
+		}
+		if (fieldCount >= 4) {
+			updateHealth(pokemonKey(1), 3);
+		}
+		String calledBack = active.put(side, nickname);
+		if (calledBack == null || !switched) {
+			TISwitchEvent event = new TISwitchEvent(line, 0, line.length());
+			event.set(owner, nickname, species);
+			return event;
+		}
+		TIChangeEvent event = new TIChangeEvent(line, 0, line.length());
+		event.set(owner, nickname, species, calledBack);
+		return event;
+	}
+	
+	/**
+	 * "|-damage|p2a: nickname|hp/maxhp status|[from] ..." - works out the percentage of its health the Pokemon lost.
+	 * @return Percentage lost, or -1 if the health can't be read.
+	 */
+	private int readDamage() {
+		String key = pokemonKey(1);
+		int[] before = health.get(key);
+		int[] after = updateHealth(key, 2);
+		if (after == null) {
+			return -1;
+		}
+		int maxHP = after[1];
+		int hpBefore = (before == null) ? maxHP : before[0];
+		if (maxHP <= 0) {
+			return -1;
+		}
+		return Math.round((hpBefore - after[0]) * 100f / maxHP);
+	}
+	
+	/**
+	 * Reads "hp/maxhp status" (or "0 fnt") from a field as the Pokemon's health.
+	 * @return The health read, or null if the field isn't health.
+	 */
+	private int[] updateHealth(String key, int field) {
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		int space = EventText.indexOf(buffer, " ", start, end);
+		if (space != -1) {
+			end = space;
+		}
+		int slash = EventText.indexOf(buffer, "/", start, end);
+		int hp = EventText.parseInt(buffer, start, (slash == -1) ? end : slash);
+		if (hp == -1) {
+			return null;
+		}
+		int[] previous = health.get(key);
+		int maxHP;
+		if (slash != -1) {
+			maxHP = EventText.parseInt(buffer, slash + 1, end);
+		}
+		else {
+			maxHP = (previous == null) ? 100 : previous[1];
+		}
+		int[] current = { hp, maxHP };
+		health.put(key, current);
+		return current;
+	}
+	
+	/**
+	 * Finds the fields of the message in buffer[start, end).
+	 */
+	private void split(int start, int end) {
+		fieldCount = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end; ++i) {
+			if (i == end || buffer.charAt(i) == '|') {
+				if (fieldCount == fieldStarts.length) {
+					fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+					fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+				}
+				fieldStarts[fieldCount] = fieldStart;
+				fieldEnds[fieldCount] = i;
+				++fieldCount;
+				fieldStart = i + 1;
+			}
+		}
+	}
+	
+	private String field(int field) {
+		if (field >= fieldCount) {
+			return "";
+		}
+		return buffer.substring(fieldStarts[field], fieldEnds[field]);
+	}
+	
+	/**
+	 * @return Side of a Pokemon field ("p1a: nickname" to "p1").
+	 */
+	private String side(int field) {
+		int start = fieldStarts[field];
+		return (fieldEnds[field] - start < 2) ? "" : buffer.substring(start, start + 2);
+	}
+	
+	/**
+	 * @return Nickname in a Pokemon field ("p1a: nickname" to "nickname").
+	 */
+	private String nickname(int field) {
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		int colon = EventText.indexOf(buffer, ": ", start, end);
+		return nicknames.intern(buffer, (colon == -1) ? start : colon + 2, end);
+	}
+	
+	private boolean isFoe(int field) {
+		return !side(field).equals(mySide);
+	}
+	
+	private String pokemonKey(int field) {
+		return side(field) + ": " + nickname(field);
+	}
+}
@@ -1,13 +1,52 @@
 package seleniumhelper.loginterpret.events;
 
-public class TIChangeEvent extends TIEvent {
+/**
+ * "(owner) called (Pokemon) back!" followed by the Pokemon sent out in its place.
+ * @author burse
+ */
+public class TIChangeEvent extends TISwitchEvent {
+	
+	private static final String CALLED = " called ";
+	private static final String BACK = " back!" + EventText.DIV_END;
+	
+	private String calledBack;
 	
 	/**
 	 * DO NOT CALL
 	 * @see TIEvent#create
 	 */
-	public TIChangeEvent(String eventText) {
-		super(eventText);
+	public TIChangeEvent(CharSequence text, int start, int end) {
+		super(text, start, end);
+	}
+	
+	protected void decode() {
+		super.decode();
+		calledBack = null;
+		int called = EventText.indexOf(text, CALLED, start, end);
+		if (called == -1) {
+			return;
+		}
+		int nameStart = called + CALLED.length();
+		int back = EventText.indexOf(text, BACK, nameStart, end);
+		if (back != -1) {
+			calledBack = EventText.decode(text, nameStart, back);
+		}
+	}
+	
+	/**
+	 * Sets the fields of an event read from the battle protocol.
+	 */
+	void set(String owner, String nickname, String species, String calledBack) {
+		set(owner, nickname, species);
+		this.calledBack = calledBack;
+	}
+	
+	/**
+	 * @return Nickname of the Pokemon called back, as the log shows it.
+	 */
+	public String getCalledBack() {
+		ensureDecoded();
+		return calledBack;
 	}
 	
 }
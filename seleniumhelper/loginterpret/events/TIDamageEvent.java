@@ -0,0 +1,80 @@
+package seleniumhelper.loginterpret.events;
+
+/**
+ * "(Pokemon) lost N% of its health!" - a Pokemon taking damage.
+ * The log only shows how much was lost, as a percentage of the Pokemon's total health.
+ * @author burse
+ */
+public class TIDamageEvent extends TIEvent {
+	
+	private static final String LOST = " lost ";
+	private static final String DAMAGE_END = "% of its health!";
+	
+	private String pokemon;
+	private boolean foe;
+	private int percentLost;
+	
+	/**
+	 * DO NOT CALL
+	 * @see TIEvent#create
+	 */
+	public TIDamageEvent(CharSequence text, int start, int end) {
+		super(text, start, end);
+	}
+	
+	protected void decode() {
+		pokemon = null;
+		foe = false;
+		percentLost = -1;
+		int damageEnd = EventText.lastIndexOf(text, DAMAGE_END, start, end);
+		if (damageEnd == -1) {
+			return;
+		}
+		// Search back from the percentage, in case the nickname contains " lost "
+		int lost = EventText.lastIndexOf(text, LOST, start, damageEnd);
+		if (lost == -1) {
+			return;
+		}
+		int pokemonStart = EventText.lineContentStart(text, start, lost);
+		if (EventText.regionMatches(text, pokemonStart, lost, EventText.FOE_PREFIX)) {
+			foe = true;
+			pokemonStart += EventText.FOE_PREFIX.length();
+		}
+		pokemon = EventText.decode(text, pokemonStart, lost);
+		percentLost = EventText.parseInt(text, lost + LOST.length(), damageEnd);
+	}
+	
+	/**
+	 * Sets the fields of an event read from the battle protocol.
+	 */
+	void set(String pokemon, boolean foe, int percentLost) {
+		this.pokemon = pokemon;
+		this.foe = foe;
+		this.percentLost = percentLost;
+		setDecoded();
+	}
+	
+	/**
+	 * @return Nickname of the Pokemon damaged, without "The foe's ".
+	 */
+	public String getPokemon() {
+		ensureDecoded();
+		return pokemon;
+	}
+	
+	/**
+	 * @return True if the Pokemon damaged is the opponent's.
+	 */
+	public boolean isFoe() {
+		ensureDecoded();
+		return foe;
+	}
+	
+	/**
+	 * @return Percentage of its total health the Pokemon lost, or -1 if the text isn't damage.
+	 */
+	public int getPercentLost() {
+		ensureDecoded();
+		return percentLost;
+	}
+}
@@ -1,8 +1,5 @@
 package seleniumhelper.loginterpret.events;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.Iterator;
-
 /**
  * Superclass that represents one "event" from Showdown.
  * Subclasses contain interpreted event data in an easy to use format.
@@ -18,10 +15,14 @@ public abstract class TIEvent {
 	 * Simply add a new entry in this map to create a new event.
 	 * First parameter is the regex applied to the line in the battle log- if this
 	 * matches, a new TIEvent instance is created, specifically an instance of
-	 * the class in the second parameter.<p>
+	 * the TIEvent subclass created by the factory in the second parameter.<p>
 	 * 
-	 * The second entry must have regex=null and will be selected if no regex match is found.
-	 * class=null indicates to skip that line upon a match.<p>
+	 * The last entry must have regex=null and will be selected if no regex match is found.
+	 * factory=null indicates to skip that line upon a match.
+	 * The map is checked with <code>TIEventData.validate</code> when it is built, and compiled
+	 * into a dispatcher when TIEvent is loaded, so changes made to it after that are ignored.
+	 * Start each regex with '^' and some literal text (eg "^&lt;div class=\"weather\"&gt;") so it
+	 * is only tried on lines which start that way.<p>
 	 *
 	 * The number of additional lines required from the battle log
 	 * to create this TIEvent object. Special
@@ -31,101 +32,173 @@ public abstract class TIEvent {
 	 * Otherwise it is an integer specifying how many lines from the log should
 	 * be read for the event, <b>including initial line</b>.
 	 */
-	public static final TIEventData[] EVENTMAP = {
+	public static final TIEventData[] EVENTMAP = TIEventData.validate(
 		new TIEventData("^<h2>Turn|^<div class=\"spacer\">", null, 0),
-		new TIEventData("^<div>.+? called .+? back!</div>$", TIChangeEvent.class, 3),
-		new TIEventData(null, TIUnknownEvent.class, TIEventData.REQUIRES_UNTIL_SPACER),
-	};
+		new TIEventData("^<div>.+? called .+? back!</div>$", new TIEventFactory() {
+			public TIEvent create(CharSequence text, int start, int end) { return new TIChangeEvent(text, start, end); }
+		}, 3),
+		new TIEventData("^<div>.+? sent out .+?!</div>$", new TIEventFactory() {
+			public TIEvent create(CharSequence text, int start, int end) { return new TISwitchEvent(text, start, end); }
+		}, 1),
+		new TIEventData("^<div>.+? used <strong>.+?</strong>!</div>$", new TIEventFactory() {
+			public TIEvent create(CharSequence text, int start, int end) { return new TIMoveEvent(text, start, end); }
+		}, 1),
+		new TIEventData("^<div>.+? lost [0-9]+% of its health!</div>$", new TIEventFactory() {
+			public TIEvent create(CharSequence text, int start, int end) { return new TIDamageEvent(text, start, end); }
+		}, 1),
+		new TIEventData("^<div>.+? fainted!</div>$", new TIEventFactory() {
+			public TIEvent create(CharSequence text, int start, int end) { return new TIFaintEvent(text, start, end); }
+		}, 1),
+		new TIEventData(null, new TIEventFactory() {
+			public TIEvent create(CharSequence text, int start, int end) { return new TIUnknownEvent(text, start, end); }
+		}, TIEventData.REQUIRES_UNTIL_SPACER)
+	);
+	
+	private static final TIEventDispatcher DISPATCHER = new TIEventDispatcher(EVENTMAP);
+	
+	// The event is text[start, end) - a span of the whole turn's HTML
+	protected CharSequence text;
+	protected int start;
+	protected int end;
+	
+	// String form of the event text, made on request
+	private String eventText;
 	
-	protected String eventText;
+	// Whether decode() has run for the current text
+	private boolean decoded;
 	
 	/**
 	 * DO NOT CALL
-	 * @see TIEvent#create(Iterator)
+	 * @see TIEvent#create(TurnLines)
+	 */
+	public TIEvent(CharSequence text, int start, int end) {
+		this.text = text;
+		this.start = start;
+		this.end = end;
+	}
+	
+	/**
+	 * Points this event at another span of text, so a flyweight event can be reused.
+	 * Fields decoded from the old text are decoded again on request.
 	 */
-	public TIEvent(String eventText) {
-		this.eventText = eventText;
+	void reset(CharSequence text, int start, int end) {
+		this.text = text;
+		this.start = start;
+		this.end = end;
+		eventText = null;
+		decoded = false;
+	}
+	
+	/**
+	 * Makes sure the subclass's fields have been decoded from the event text.
+	 * Call at the start of every getter of a decoded field; <code>decode</code> only runs the first time.
+	 */
+	protected final void ensureDecoded() {
+		if (!decoded) {
+			decoded = true;
+			decode();
+		}
+	}
+	
+	/**
+	 * Marks the subclass's fields as already set, for events which weren't read from log HTML
+	 * (see <code>ProtocolParser</code>), so <code>decode</code> never runs over their text.
+	 */
+	final void setDecoded() {
+		decoded = true;
+	}
+	
+	/**
+	 * Decodes the subclass's fields from text[start, end). Runs at most once per event,
+	 * the first time a field is needed.
+	 */
+	protected void decode() {
 	}
 	
 	/**
 	 * Creates a new Turn Info event based on the current line of the battle
 	 * log HTML we are looking at.
-	 * @param itr String iterator of the battle log HTML.<br>
-	 * This is always incremented at least once.
+	 * @param lines Lines of the turn's battle log HTML.<br>
+	 * This is always advanced at least one line.
 	 * @return TIEvent subclass or null if this line should be skipped.
 	 */
-	public static TIEvent create(Iterator<String> itr) {
-		// Determine what kind of event this line is.
-		String strEvent = itr.next();
-		TIEventData eventData = TIEvent.findEventByMatch(strEvent);
+	public static TIEvent create(TurnLines lines) {
+		TIEventData eventData = lines.readEvent();
 		
-		// eventData.tiEventClass being null means we skip this line
-		if (eventData.tiEventClass == null) {
+		// eventData.factory being null means we skip this line
+		if (eventData.factory == null) {
 			return null;
 		}
 		
-		// GET EVENT TEXT
-		// init with our first line
-		String eventText = strEvent;
-		
-		// Get extra lines required: case 1: until next spacer, h2, or end of stream.
-		if (eventData.linesRequired == TIEventData.REQUIRES_UNTIL_SPACER) {
-			while (itr.hasNext()) {
-				String line = itr.next();
-				if (!line.matches("^<div class=\"spacer\">.*?</div>$") &&
-					!line.matches("^<h2>.*?</h2>$")) {
-					eventText += "\n" + line;
-				}
-				else {
-					break;
-				}
-			}
-		}
-		// case 2: int - just number of lines required
-		else {
-			// linesRequired-1 because we have already appended the first line
-			for (int j = 0; itr.hasNext() && j < eventData.linesRequired-1; ++j) {
-				eventText += itr.next();
-			}
-		}
-		
 		// INITIALISE EVENT OBJECT
-		TIEvent event = null;
-		try {
-			event = (TIEvent) eventData.tiEventClass.getConstructors()[0].newInstance(eventText);
-		} catch (InstantiationException e) {
-			return null;
-		} catch (IllegalAccessException e) {
-			return null;
-		} catch (IllegalArgumentException e) {
-			return null;
-		} catch (InvocationTargetException e) {
-			return null;
-		} catch (SecurityException e) {
-			return null;
-		}
-		return event;
+		return eventData.factory.create(lines.getText(), lines.eventStart(), lines.eventEnd());
 	}
  
 	/**
 	 * Find an event class for our text line
 	 * @param firstLine Line we've read from the log
-	 * @return Matching TIEventData from EVENT_MAP
+	 * @return Index of the matching TIEventData in EVENTMAP
 	 */
-	private static TIEventData findEventByMatch(String firstLine) {
-		for (TIEventData ted : EVENTMAP) {
-			// regex should be null if we've traverse the entire list
-			if (ted.regex == null || ted.regex.matcher(firstLine).find()) {
-				return ted;
-			}
-		}
-		return null;
+	static int findEventByMatch(CharSequence firstLine) {
+		return DISPATCHER.findIndex(firstLine);
 	}
 	
+	/**
+	 * @return The TIEventData at <code>index</code> in EVENTMAP, as it was when TIEvent was loaded.
+	 */
+	static TIEventData getEventData(int index) {
+		return DISPATCHER.get(index);
+	}
+	
+	/**
+	 * @return String - the HTML of the lines making up this event
+	 * (or its protocol line, for events from <code>ProtocolParser</code>).
+	 */
 	public String getEventText() {
+		if (eventText == null) {
+			eventText = text.subSequence(start, end).toString();
+		}
 		return eventText;
 	}
 	
+	/**
+	 * Gets the event's HTML without copying it out of the turn.
+	 * @return CharSequence - view of the HTML of the lines making up this event.
+	 */
+	public CharSequence getEventTextView() {
+		return new CharSequence() {
+			public int length() {
+				return end - start;
+			}
+			
+			public char charAt(int index) {
+				return text.charAt(start + index);
+			}
+			
+			public CharSequence subSequence(int from, int to) {
+				return text.subSequence(start + from, start + to);
+			}
+			
+			public String toString() {
+				return getEventText();
+			}
+		};
+	}
+	
+	/**
+	 * @return Offset in the turn's HTML where this event starts.
+	 */
+	public int getStart() {
+		return start;
+	}
+	
+	/**
+	 * @return Offset in the turn's HTML just past the end of this event.
+	 */
+	public int getEnd() {
+		return end;
+	}
+	
 	public String toString() {
 		return getClass().getSimpleName()+"|"+getEventText();
 	}
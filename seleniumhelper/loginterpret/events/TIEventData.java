@@ -16,9 +16,9 @@ public class TIEventData {
 	 */
 	public Pattern regex;
 	/**
-	 * Class for this event.
+	 * Creates this event, or null to skip the line.
 	 */
-	public Class<? extends TIEvent> tiEventClass;
+	public TIEventFactory factory;
 	
 	/** The number of additional lines required from the battle log
 	 * to create this TIEvent object. Special
@@ -33,18 +33,42 @@ public class TIEventData {
 	/**
 	 * Class for mapping Regex patterns to TIEvent subclasses.
 	 * @param pattern Pattern in the log that means this event.
-	 * @param event Class for this event (subclass of TIEvent).
+	 * @param factory Creates the TIEvent subclass for this event, or null to skip the line.
 	 * @param linesRequired (see below).
 	 * @see TIEventData#linesRequired
 	 */
-	public TIEventData(String pattern, Class<? extends TIEvent> event, int linesRequired) {
+	public TIEventData(String pattern, TIEventFactory factory, int linesRequired) {
 		if (pattern == null) {
 			regex = null;
 		}
 		else {
 			regex = Pattern.compile(pattern);
 		}
-		tiEventClass = event;
+		this.factory = factory;
 		this.linesRequired = linesRequired;
 	}
+	
+	/**
+	 * Checks a map of events is usable, so that a bad entry fails when the map is built
+	 * rather than when the line it matches turns up.
+	 * @param eventMap Entries in the order they are matched.
+	 * @return eventMap
+	 * @throws IllegalArgumentException If the last entry isn't the only one with regex=null,
+	 * or an entry requires an invalid number of lines.
+	 */
+	public static TIEventData[] validate(TIEventData... eventMap) {
+		if (eventMap.length == 0 || eventMap[eventMap.length-1].regex != null) {
+			throw new IllegalArgumentException("The last event must have regex=null");
+		}
+		for (int i = 0; i < eventMap.length; ++i) {
+			TIEventData ted = eventMap[i];
+			if (ted.regex == null && i != eventMap.length-1) {
+				throw new IllegalArgumentException("Only the last event may have regex=null (event " + i + ")");
+			}
+			if (ted.factory != null && ted.linesRequired != REQUIRES_UNTIL_SPACER && ted.linesRequired < 1) {
+				throw new IllegalArgumentException("Event " + i + " requires " + ted.linesRequired + " lines");
+			}
+		}
+		return eventMap;
+	}
 }
@@ -0,0 +1,328 @@
+package seleniumhelper.loginterpret.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * EVENTMAP compiled for finding the entry which matches a line of the battle log.<br/>
+ * Each regex is split into its top-level alternatives, and the literal text each alternative
+ * must start with (eg "&lt;div class=\"spacer\"&gt;" from "^&lt;div class=\"spacer\"&gt;") goes into a trie.
+ * Classifying a line walks the trie along the start of the line, and only runs the regexes
+ * of entries whose prefix it has, plus any entries with no literal prefix. So classification
+ * costs about the same however many entries there are, as long as they start differently.<br/>
+ * Entries are still tried in map order and the first match wins, exactly as before.
+ * @author burse
+ */
+public final class TIEventDispatcher {
+	
+	private static final int[] NO_ENTRIES = new int[0];
+	
+	private static final class Node {
+		char[] chars = new char[0];
+		Node[] next = new Node[0];
+		
+		// Entries with a prefix ending here
+		int[] ending = NO_ENTRIES;
+		
+		// Entries worth trying for a line which reaches this node and no further, in map order
+		int[] candidates;
+		
+		Node child(char c) {
+			int i = Arrays.binarySearch(chars, c);
+			return (i < 0) ? null : next[i];
+		}
+		
+		Node addChild(char c) {
+			int i = Arrays.binarySearch(chars, c);
+			if (i >= 0) {
+				return next[i];
+			}
+			i = -i - 1;
+			char[] newChars = new char[chars.length + 1];
+			Node[] newNext = new Node[next.length + 1];
+			System.arraycopy(chars, 0, newChars, 0, i);
+			System.arraycopy(next, 0, newNext, 0, i);
+			newChars[i] = c;
+			newNext[i] = new Node();
+			System.arraycopy(chars, i, newChars, i + 1, chars.length - i);
+			System.arraycopy(next, i, newNext, i + 1, next.length - i);
+			chars = newChars;
+			next = newNext;
+			return newNext[i];
+		}
+	}
+	
+	private final TIEventData[] eventMap;
+	private final Node root = new Node();
+	
+	// Matcher for each entry, reset onto each line rather than made anew
+	private final ThreadLocal<Matcher[]> matchers = new ThreadLocal<Matcher[]>() {
+		protected Matcher[] initialValue() {
+			return new Matcher[eventMap.length];
+		}
+	};
+	
+	/**
+	 * Compiles an event map, which should already have passed <code>TIEventData.validate</code>.
+	 * @throws IllegalArgumentException If an entry can never match a line, because it repeats an
+	 * earlier alternative or every line it could match is taken by an earlier entry.
+	 */
+	public TIEventDispatcher(TIEventData[] eventMap) {
+		this.eventMap = eventMap.clone();
+		
+		// Entries without a usable prefix are tried for every line
+		List<Integer> unprefixed = new ArrayList<Integer>();
+		for (int i = 0; i < eventMap.length; ++i) {
+			String[] prefixes = (eventMap[i].regex == null) ? null : literalPrefixes(eventMap[i].regex.pattern());
+			if (prefixes == null) {
+				unprefixed.add(i);
+				continue;
+			}
+			for (String prefix : prefixes) {
+				Node node = root;
+				for (int j = 0; j < prefix.length(); ++j) {
+					node = node.addChild(prefix.charAt(j));
+				}
+				node.ending = append(node.ending, i);
+			}
+		}
+		int[] always = new int[unprefixed.size()];
+		for (int i = 0; i < always.length; ++i) {
+			always[i] = unprefixed.get(i);
+		}
+		link(root, always);
+		checkReachable();
+	}
+	
+	/**
+	 * Finds the entry whose regex matches the line.
+	 * @return The first matching entry in map order, or null if none match.
+	 */
+	public TIEventData find(CharSequence line) {
+		int entry = findIndex(line);
+		return (entry == -1) ? null : eventMap[entry];
+	}
+	
+	/**
+	 * Finds the entry whose regex matches the line.
+	 * @return Index in the map of the first matching entry, or -1 if none match.
+	 */
+	public int findIndex(CharSequence line) {
+		Node node = root;
+		for (int i = 0; i < line.length(); ++i) {
+			Node next = node.child(line.charAt(i));
+			if (next == null) {
+				break;
+			}
+			node = next;
+		}
+		Matcher[] lineMatchers = matchers.get();
+		for (int entry : node.candidates) {
+			TIEventData ted = eventMap[entry];
+			if (ted.regex == null) {
+				return entry;
+			}
+			Matcher matcher = lineMatchers[entry];
+			if (matcher == null) {
+				matcher = ted.regex.matcher(line);
+				lineMatchers[entry] = matcher;
+			}
+			else {
+				matcher.reset(line);
+			}
+			boolean found = matcher.find();
+			// Don't keep the line alive
+			matcher.reset("");
+			if (found) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return The entry at <code>index</code> in the map this was compiled from.
+	 */
+	public TIEventData get(int index) {
+		return eventMap[index];
+	}
+	
+	/**
+	 * Works out the candidates for every node, from the entries ending at it and its ancestors.
+	 */
+	private static void link(Node node, int[] inherited) {
+		node.candidates = merge(inherited, node.ending);
+		for (Node child : node.next) {
+			link(child, node.candidates);
+		}
+	}
+	
+	/**
+	 * Rejects alternatives which can never be the first match: either an earlier entry has the
+	 * same alternative, or an earlier entry is just a literal prefix (eg "^&lt;h2&gt;Turn") which
+	 * every line starting with this alternative's prefix also starts with.
+	 */
+	private void checkReachable() {
+		for (int i = 0; i < eventMap.length; ++i) {
+			if (eventMap[i].regex == null) {
+				continue;
+			}
+			String[] alternatives = splitAlternatives(eventMap[i].regex.pattern());
+			String[] prefixes = literalPrefixes(eventMap[i].regex.pattern());
+			for (int a = 0; a < alternatives.length; ++a) {
+				for (int j = 0; j < i; ++j) {
+					if (eventMap[j].regex == null) {
+						continue;
+					}
+					for (String earlier : splitAlternatives(eventMap[j].regex.pattern())) {
+						boolean repeated = earlier.equals(alternatives[a]);
+						boolean shadowed = prefixes != null && isPureLiteral(earlier)
+								&& prefixes[a].startsWith(literalPrefix(earlier));
+						if (repeated || shadowed) {
+							throw new IllegalArgumentException("Event " + i + " (" + alternatives[a]
+									+ ") can never match: event " + j + " (" + earlier + ") matches first");
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the literal text each top-level alternative of a regex must start with.
+	 * @return One prefix per alternative, or null if any alternative isn't anchored or has no literal prefix.
+	 */
+	static String[] literalPrefixes(String regex) {
+		String[] alternatives = splitAlternatives(regex);
+		String[] prefixes = new String[alternatives.length];
+		for (int i = 0; i < alternatives.length; ++i) {
+			prefixes[i] = literalPrefix(alternatives[i]);
+			if (prefixes[i] == null || prefixes[i].length() == 0) {
+				return null;
+			}
+		}
+		return prefixes;
+	}
+	
+	/**
+	 * Gets the literal text an alternative must start with.
+	 * @return The prefix (possibly empty), or null if the alternative isn't anchored with '^'.
+	 */
+	static String literalPrefix(String alternative) {
+		if (!alternative.startsWith("^")) {
+			return null;
+		}
+		StringBuilder prefix = new StringBuilder();
+		int i = 1;
+		while (i < alternative.length()) {
+			char c = alternative.charAt(i);
+			int length = 1;
+			if (c == '\\') {
+				// Only escaped punctuation is a literal character; \d, \s, \Q etc. are not
+				if (i + 1 >= alternative.length() || Character.isLetterOrDigit(alternative.charAt(i + 1))) {
+					break;
+				}
+				c = alternative.charAt(i + 1);
+				length = 2;
+			}
+			else if (".[]()*+?{}|^$".indexOf(c) != -1) {
+				break;
+			}
+			// A quantifier after the character means it might not be there (or might be repeated)
+			int after = i + length;
+			if (after < alternative.length() && "*?{+".indexOf(alternative.charAt(after)) != -1) {
+				if (alternative.charAt(after) == '+') {
+					prefix.append(c);
+				}
+				break;
+			}
+			prefix.append(c);
+			i = after;
+		}
+		return prefix.toString();
+	}
+	
+	/**
+	 * Whether an alternative matches exactly the lines starting with its literal prefix.
+	 */
+	private static boolean isPureLiteral(String alternative) {
+		String prefix = literalPrefix(alternative);
+		if (prefix == null) {
+			return false;
+		}
+		// Same as the prefix, once escapes are taken out
+		int literalLength = 1;
+		for (int i = 1; i < alternative.length(); ++i) {
+			if (alternative.charAt(i) == '\\') {
+				++i;
+			}
+			++literalLength;
+		}
+		return literalLength == prefix.length() + 1;
+	}
+	
+	/**
+	 * Splits a regex on the '|'s which aren't in a group, a character class or escaped.
+	 */
+	static String[] splitAlternatives(String regex) {
+		List<String> alternatives = new ArrayList<String>();
+		int depth = 0;
+		boolean inClass = false;
+		int start = 0;
+		for (int i = 0; i < regex.length(); ++i) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				++i;
+			}
+			else if (inClass) {
+				if (c == ']') {
+					inClass = false;
+				}
+			}
+			else if (c == '[') {
+				inClass = true;
+			}
+			else if (c == '(') {
+				++depth;
+			}
+			else if (c == ')') {
+				--depth;
+			}
+			else if (c == '|' && depth == 0) {
+				alternatives.add(regex.substring(start, i));
+				start = i + 1;
+			}
+		}
+		alternatives.add(regex.substring(start));
+		return alternatives.toArray(new String[alternatives.size()]);
+	}
+	
+	private static int[] append(int[] a, int value) {
+		int[] b = Arrays.copyOf(a, a.length + 1);
+		b[a.length] = value;
+		return b;
+	}
+	
+	/**
+	 * Merges two sorted lists of entries, without duplicates.
+	 */
+	private static int[] merge(int[] a, int[] b) {
+		int[] merged = new int[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length || j < b.length) {
+			int next;
+			if (j == b.length || (i < a.length && a[i] <= b[j])) {
+				next = a[i++];
+			}
+			else {
+				next = b[j++];
+			}
+			if (n == 0 || merged[n - 1] != next) {
+				merged[n++] = next;
+			}
+		}
+		return Arrays.copyOf(merged, n);
+	}
+}
@@ -0,0 +1,17 @@
+package seleniumhelper.loginterpret.events;
+
+/**
+ * Creates one kind of TIEvent from its text in the battle log.
+ * Entries in <code>TIEvent.EVENTMAP</code> register their subclass with one of these,
+ * so events are created with a direct constructor call.
+ * @author burse
+ */
+public interface TIEventFactory {
+	/**
+	 * @param text The turn's battle log HTML.
+	 * @param start Offset in text where the lines making up the event start.
+	 * @param end Offset in text just past the end of the event.
+	 * @return A new TIEvent (never null).
+	 */
+	TIEvent create(CharSequence text, int start, int end);
+}
@@ -0,0 +1,61 @@
+package seleniumhelper.loginterpret.events;
+
+/**
+ * "(Pokemon) fainted!" - a Pokemon fainting.
+ * @author burse
+ */
+public class TIFaintEvent extends TIEvent {
+	
+	private static final String FAINTED = " fainted!" + EventText.DIV_END;
+	
+	private String pokemon;
+	private boolean foe;
+	
+	/**
+	 * DO NOT CALL
+	 * @see TIEvent#create
+	 */
+	public TIFaintEvent(CharSequence text, int start, int end) {
+		super(text, start, end);
+	}
+	
+	protected void decode() {
+		pokemon = null;
+		foe = false;
+		int fainted = EventText.lastIndexOf(text, FAINTED, start, end);
+		if (fainted == -1) {
+			return;
+		}
+		int pokemonStart = EventText.lineContentStart(text, start, fainted);
+		if (EventText.regionMatches(text, pokemonStart, fainted, EventText.FOE_PREFIX)) {
+			foe = true;
+			pokemonStart += EventText.FOE_PREFIX.length();
+		}
+		pokemon = EventText.decode(text, pokemonStart, fainted);
+	}
+	
+	/**
+	 * Sets the fields of an event read from the battle protocol.
+	 */
+	void set(String pokemon, boolean foe) {
+		this.pokemon = pokemon;
+		this.foe = foe;
+		setDecoded();
+	}
+	
+	/**
+	 * @return Nickname of the Pokemon which fainted, without "The foe's ".
+	 */
+	public String getPokemon() {
+		ensureDecoded();
+		return pokemon;
+	}
+	
+	/**
+	 * @return True if the Pokemon which fainted is the opponent's.
+	 */
+	public boolean isFoe() {
+		ensureDecoded();
+		return foe;
+	}
+}
@@ -0,0 +1,106 @@
+package seleniumhelper.loginterpret.events;
+
+import seleniumhelper.loginterpret.SymbolTable;
+
+/**
+ * "(Pokemon) used (move)!" - a Pokemon using a move.
+ * The fields are decoded from the event text the first time one is asked for.
+ * @author burse
+ */
+public class TIMoveEvent extends TIEvent {
+	
+	private static final String USED = " used <strong>";
+	private static final String MOVE_END = "</strong>";
+	
+	private String user;
+	private boolean foe;
+	private String move;
+	private String moveId;
+	private int moveSymbol;
+	
+	/**
+	 * DO NOT CALL
+	 * @see TIEvent#create
+	 */
+	public TIMoveEvent(CharSequence text, int start, int end) {
+		super(text, start, end);
+	}
+	
+	protected void decode() {
+		user = null;
+		foe = false;
+		move = null;
+		moveId = null;
+		moveSymbol = SymbolTable.NONE;
+		int used = EventText.indexOf(text, USED, start, end);
+		if (used == -1) {
+			return;
+		}
+		int moveStart = used + USED.length();
+		int moveEnd = EventText.indexOf(text, MOVE_END, moveStart, end);
+		if (moveEnd == -1) {
+			return;
+		}
+		int userStart = EventText.lineContentStart(text, start, used);
+		if (EventText.regionMatches(text, userStart, used, EventText.FOE_PREFIX)) {
+			foe = true;
+			userStart += EventText.FOE_PREFIX.length();
+		}
+		user = EventText.decode(text, userStart, used);
+		move = EventText.decode(text, moveStart, moveEnd);
+		moveSymbol = SymbolTable.MOVES.symbol(SymbolTable.moveId(move));
+		moveId = SymbolTable.MOVES.name(moveSymbol);
+	}
+	
+	/**
+	 * Sets the fields of an event read from the battle protocol.
+	 */
+	void set(String user, boolean foe, String move) {
+		this.user = user;
+		this.foe = foe;
+		this.move = move;
+		moveSymbol = SymbolTable.MOVES.symbol(SymbolTable.moveId(move));
+		moveId = SymbolTable.MOVES.name(moveSymbol);
+		setDecoded();
+	}
+	
+	/**
+	 * @return Nickname of the Pokemon using the move, without "The foe's ".
+	 */
+	public String getUser() {
+		ensureDecoded();
+		return user;
+	}
+	
+	/**
+	 * @return True if the Pokemon using the move is the opponent's.
+	 */
+	public boolean isFoe() {
+		ensureDecoded();
+		return foe;
+	}
+	
+	/**
+	 * @return Name of the move (eg "Sunny Day").
+	 */
+	public String getMove() {
+		ensureDecoded();
+		return move;
+	}
+	
+	/**
+	 * @return Id of the move (eg "sunnyday").
+	 */
+	public String getMoveId() {
+		ensureDecoded();
+		return moveId;
+	}
+	
+	/**
+	 * @return <code>SymbolTable.MOVES</code> symbol of the move.
+	 */
+	public int getMoveSymbol() {
+		ensureDecoded();
+		return moveSymbol;
+	}
+}
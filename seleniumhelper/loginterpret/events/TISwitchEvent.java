@@ -0,0 +1,100 @@
+package seleniumhelper.loginterpret.events;
+
+import seleniumhelper.loginterpret.PokemonName;
+import seleniumhelper.loginterpret.SymbolTable;
+
+/**
+ * "(owner) sent out (Pokemon)!" - a Pokemon being sent into battle.
+ * The names are decoded from the event text the first time one is asked for.
+ * @author burse
+ */
+public class TISwitchEvent extends TIEvent {
+	
+	private static final String SENT_OUT = " sent out ";
+	private static final String SWITCH_END = "!" + EventText.DIV_END;
+	
+	private String owner;
+	private String nickname;
+	private String species;
+	private int speciesSymbol;
+	
+	/**
+	 * DO NOT CALL
+	 * @see TIEvent#create
+	 */
+	public TISwitchEvent(CharSequence text, int start, int end) {
+		super(text, start, end);
+	}
+	
+	protected void decode() {
+		owner = null;
+		nickname = null;
+		species = null;
+		speciesSymbol = SymbolTable.NONE;
+		int sentOut = EventText.indexOf(text, SENT_OUT, start, end);
+		if (sentOut == -1) {
+			return;
+		}
+		int nameStart = sentOut + SENT_OUT.length();
+		int nameEnd = EventText.indexOf(text, SWITCH_END, nameStart, end);
+		if (nameEnd == -1) {
+			return;
+		}
+		owner = EventText.decode(text, EventText.lineContentStart(text, start, sentOut), sentOut);
+		
+		// "nickname (Species)" or just "Species"
+		int open = PokemonName.speciesStart(text, nameStart, nameEnd);
+		if (open == -1) {
+			species = SymbolTable.SPECIES.intern(EventText.decode(text, nameStart, nameEnd));
+			nickname = species;
+		}
+		else {
+			nickname = EventText.decode(text, nameStart, open - 1);
+			species = SymbolTable.SPECIES.intern(EventText.decode(text, open + 1, nameEnd - 1));
+		}
+		speciesSymbol = SymbolTable.SPECIES.symbol(species);
+	}
+	
+	/**
+	 * Sets the fields of an event read from the battle protocol.
+	 */
+	void set(String owner, String nickname, String species) {
+		this.owner = owner;
+		this.nickname = nickname;
+		this.species = SymbolTable.SPECIES.intern(species);
+		speciesSymbol = SymbolTable.SPECIES.symbol(this.species);
+		setDecoded();
+	}
+	
+	/**
+	 * @return Name of the player who sent the Pokemon out, or null if the text isn't a switch.
+	 */
+	public String getOwner() {
+		ensureDecoded();
+		return owner;
+	}
+	
+	/**
+	 * @return The Pokemon's nickname, or its species if it doesn't have one.
+	 */
+	public String getNickname() {
+		ensureDecoded();
+		return nickname;
+	}
+	
+	/**
+	 * @return The Pokemon's species.
+	 */
+	public String getSpecies() {
+		ensureDecoded();
+		return species;
+	}
+	
+	/**
+	 * @return <code>SymbolTable.SPECIES</code> symbol of the Pokemon's species.
+	 */
+	public int getSpeciesSymbol() {
+		ensureDecoded();
+		return speciesSymbol;
+	}
+}
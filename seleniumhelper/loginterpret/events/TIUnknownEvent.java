@@ -6,8 +6,8 @@ public class TIUnknownEvent extends TIEvent {
 	 * DO NOT CALL
 	 * @see TIEvent#create
 	 */
-	public TIUnknownEvent(String eventText) {
-		super(eventText);
+	public TIUnknownEvent(CharSequence text, int start, int end) {
+		super(text, start, end);
 		//System.out.println("Unknown event discovered: " + this.toString());
 	}
 
@@ -0,0 +1,286 @@
+package seleniumhelper.loginterpret.events;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * The lines of a turn's battle log HTML, as spans of the turn text, read one at a time
+ * to create TIEvents. A line ends after each <code>&lt;/div&gt;</code> and <code>&lt;/h2&gt;</code>,
+ * and at each new line; blank lines are skipped.<br/>
+ * The turn text is never copied. Lines are read through a single reusable CharSequence view,
+ * and the same TurnLines can be reset onto another turn, so reading lines allocates nothing.
+ * @author burse
+ */
+public final class TurnLines {
+	
+	private static final String SPACER_START = "<div class=\"spacer\">";
+	private static final String DIV_END = "</div>";
+	private static final String HEADING_START = "<h2>";
+	private static final String HEADING_END = "</h2>";
+	
+	private CharSequence text;
+	
+	// Start and end offsets of each line in text
+	private int[] starts = new int[32];
+	private int[] ends = new int[32];
+	private int count;
+	
+	// Index of the next line to read
+	private int position;
+	
+	// EVENTMAP index and lines of the last event read by readEvent
+	private int eventIndex;
+	private int eventFirst;
+	private int eventLast;
+	
+	private final LineView view = new LineView();
+	
+	/**
+	 * CharSequence over one line of a text. Reused for every line, so nothing is allocated per line.
+	 */
+	static final class LineView implements CharSequence {
+		private CharSequence text;
+		private int start;
+		private int end;
+		
+		/**
+		 * Moves the view onto a line.
+		 * @return This view.
+		 */
+		LineView set(CharSequence text, int start, int end) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			return this;
+		}
+		
+		public int length() {
+			return end - start;
+		}
+		
+		public char charAt(int index) {
+			return text.charAt(start + index);
+		}
+		
+		public CharSequence subSequence(int from, int to) {
+			return text.subSequence(start + from, start + to);
+		}
+		
+		public String toString() {
+			return text.subSequence(start, end).toString();
+		}
+	}
+	
+	/**
+	 * Splits a turn into lines.
+	 * @param text HTML of the turn. Must not change while the lines are in use.
+	 */
+	public TurnLines(CharSequence text) {
+		reset(text, 0, text.length());
+	}
+	
+	/**
+	 * Splits another turn into lines, reusing this object.
+	 * @param text Text containing the HTML of the turn. The part being read must not change while the lines are in use.
+	 * @param start Offset in text where the turn starts.
+	 * @param end Offset in text where the turn ends.
+	 */
+	public void reset(CharSequence text, int start, int end) {
+		this.text = text;
+		count = 0;
+		position = 0;
+		int lineStart = start;
+		int i = start;
+		while (i < end) {
+			char c = text.charAt(i);
+			int tagLength;
+			if (c == '\n') {
+				addLine(lineStart, i);
+				lineStart = ++i;
+			}
+			else if ((tagLength = closingTagLength(text, i, end)) > 0) {
+				i += tagLength;
+				addLine(lineStart, i);
+				lineStart = i;
+			}
+			else {
+				++i;
+			}
+		}
+		addLine(lineStart, end);
+	}
+	
+	/**
+	 * Reads the lines of the next event: its first line, and then the further lines
+	 * its EVENTMAP entry requires. The event's span is given by eventStart and eventEnd.
+	 * @return The EVENTMAP entry for the event. Its factory is null if the line should be skipped.
+	 */
+	TIEventData readEvent() {
+		// Determine what kind of event this line is.
+		int first = next();
+		eventIndex = TIEvent.findEventByMatch(line(first));
+		TIEventData eventData = TIEvent.getEventData(eventIndex);
+		eventFirst = first;
+		eventLast = first;
+		
+		// eventData.factory being null means we skip this line
+		if (eventData.factory == null) {
+			return eventData;
+		}
+		
+		// Get extra lines required: case 1: until next spacer, h2, or end of turn.
+		if (eventData.linesRequired == TIEventData.REQUIRES_UNTIL_SPACER) {
+			while (hasNext()) {
+				int line = next();
+				if (!isSpacerOrHeading(line)) {
+					eventLast = line;
+				}
+				else {
+					break;
+				}
+			}
+		}
+		// case 2: int - just number of lines required
+		else {
+			// linesRequired-1 because we already have the first line
+			for (int j = 0; hasNext() && j < eventData.linesRequired-1; ++j) {
+				eventLast = next();
+			}
+		}
+		return eventData;
+	}
+	
+	/**
+	 * @return Index in EVENTMAP of the last event read.
+	 */
+	int eventIndex() {
+		return eventIndex;
+	}
+	
+	/**
+	 * @return Offset in the turn text where the last event read starts.
+	 */
+	int eventStart() {
+		return starts[eventFirst];
+	}
+	
+	/**
+	 * @return Offset in the turn text just past the end of the last event read.
+	 */
+	int eventEnd() {
+		return ends[eventLast];
+	}
+	
+	/**
+	 * @return Number of lines in the last event read.
+	 */
+	int eventLineCount() {
+		return eventLast - eventFirst + 1;
+	}
+	
+	private void addLine(int start, int end) {
+		if (start == end) {
+			return;
+		}
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		++count;
+	}
+	
+	/**
+	 * @return The whole turn text the lines are spans of.
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+	
+	/**
+	 * @return Number of lines in the turn.
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * @return Offset in the turn text where the line starts.
+	 */
+	public int start(int line) {
+		return starts[line];
+	}
+	
+	/**
+	 * @return Offset in the turn text just past the end of the line.
+	 */
+	public int end(int line) {
+		return ends[line];
+	}
+	
+	/**
+	 * @return Whether there are lines left to read.
+	 */
+	public boolean hasNext() {
+		return position < count;
+	}
+	
+	/**
+	 * Reads the next line.
+	 * @return Index of the line.
+	 */
+	public int next() {
+		if (position >= count) {
+			throw new NoSuchElementException();
+		}
+		return position++;
+	}
+	
+	/**
+	 * Gets a view of a line. The view is shared, so is only valid until the next call.
+	 */
+	public CharSequence line(int line) {
+		return view.set(text, starts[line], ends[line]);
+	}
+	
+	/**
+	 * Whether the line is a spacer div or a heading, which end an event
+	 * (ie <code>&lt;div class="spacer"&gt;...&lt;/div&gt;</code> or <code>&lt;h2&gt;...&lt;/h2&gt;</code>).
+	 */
+	public boolean isSpacerOrHeading(int line) {
+		return isSpacerOrHeading(text, starts[line], ends[line]);
+	}
+	
+	/**
+	 * Whether text[start, end) is a spacer div or a heading line.
+	 */
+	static boolean isSpacerOrHeading(CharSequence text, int start, int end) {
+		return (EventText.regionMatches(text, start, end, SPACER_START) && endsWith(text, start + SPACER_START.length(), end, DIV_END))
+			|| (EventText.regionMatches(text, start, end, HEADING_START) && endsWith(text, start + HEADING_START.length(), end, HEADING_END));
+	}
+	
+	/**
+	 * @return Length of the <code>&lt;/div&gt;</code> or <code>&lt;/h2&gt;</code> ending a line at offset i of text,
+	 * without going past limit, or 0 if there isn't one there.
+	 */
+	static int closingTagLength(CharSequence text, int i, int limit) {
+		if (text.charAt(i) != '<') {
+			return 0;
+		}
+		if (EventText.regionMatches(text, i, limit, DIV_END)) {
+			return DIV_END.length();
+		}
+		if (EventText.regionMatches(text, i, limit, HEADING_END)) {
+			return HEADING_END.length();
+		}
+		return 0;
+	}
+	
+	/**
+	 * Whether the text between from and end ends with s.
+	 */
+	private static boolean endsWith(CharSequence text, int from, int end, String s) {
+		return end - s.length() >= from && EventText.regionMatches(text, end - s.length(), end, s);
+	}
+}
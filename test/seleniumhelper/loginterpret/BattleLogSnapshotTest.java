@@ -0,0 +1,99 @@
+package seleniumhelper.loginterpret;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class BattleLogSnapshotTest {
+	
+	private static final int READERS = 4;
+	
+	@Test
+	public void snapshotDoesNotChangeAsLogGrows() {
+		String full = BattleLogTest.battle(new Random(1), 20);
+		int half = full.indexOf("<h2>Turn 10</h2>");
+		BattleLog log = new BattleLog(full.substring(0, half));
+		BattleLogSnapshot snapshot = log.getSnapshot();
+		String text = snapshot.getLogText();
+		String turn9 = snapshot.getTurnText(9);
+		
+		log.appendLogText(full.substring(half));
+		assertEquals(9, snapshot.getCurrentTurn());
+		assertEquals(9, snapshot.getTurnCount());
+		assertEquals(text, snapshot.getLogText());
+		assertEquals(turn9, snapshot.getTurnText(9));
+		assertEquals("", snapshot.getTurnText(10));
+		assertEquals(full.substring(0, half), snapshot.getLogHTML(false));
+		assertTrue(log.getSnapshot().getVersion() > snapshot.getVersion());
+		assertEquals(log.getLogText(), log.getSnapshot().getLogText());
+	}
+	
+	/**
+	 * Readers on other threads check each snapshot they get is whole and consistent
+	 * while the battle thread appends the log in small pieces.
+	 */
+	@Test
+	public void readersSeeConsistentSnapshots() throws Exception {
+		final String full = BattleLogTest.battle(new Random(2), 300);
+		final BattleLog log = new BattleLog("");
+		final AtomicBoolean done = new AtomicBoolean();
+		ExecutorService pool = Executors.newFixedThreadPool(READERS);
+		List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+		for (int k = 0; k < READERS; ++k) {
+			readers.add(pool.submit(new Callable<Integer>() {
+				public Integer call() {
+					int reads = 0;
+					long version = -1;
+					int turnCount = -1;
+					do {
+						BattleLogSnapshot s = log.getSnapshot();
+						assertTrue(s.getVersion() >= version);
+						assertTrue(s.getTurnCount() >= turnCount);
+						version = s.getVersion();
+						turnCount = s.getTurnCount();
+						
+						StringBuilder turns = new StringBuilder();
+						for (int i = 0; i <= s.getTurnCount(); ++i) {
+							turns.append(s.getTurnText(s.getTurnNumber(i)));
+						}
+						assertEquals(s.getLogText(), turns.toString());
+						assertTrue(full.startsWith(s.getLogHTML(false)));
+						if (s.getTurnCount() > 0) {
+							assertTrue(s.getTurnHTML(s.getCurrentTurn()).startsWith("<h2>Turn " + s.getCurrentTurn() + "</h2>"));
+						}
+						if (s.getTurnCount() > 2) {
+							assertTrue(s.contains("Turn " + (s.getTurnCount() - 1) + "\n", true));
+						}
+						++reads;
+					} while (!done.get());
+					return reads;
+				}
+			}));
+		}
+		Random random = new Random(3);
+		for (int i = 0; i < full.length(); ) {
+			int end = Math.min(full.length(), i + 1 + random.nextInt(200));
+			log.appendLogText(full.substring(i, end));
+			i = end;
+		}
+		done.set(true);
+		int reads = 0;
+		for (Future<Integer> reader : readers) {
+			reads += reader.get();
+		}
+		pool.shutdown();
+		assertTrue(reads > 0);
+		assertEquals(full, log.getSnapshot().getLogHTML(false));
+		assertEquals(300, log.getSnapshot().getCurrentTurn());
+	}
+}
@@ -0,0 +1,161 @@
+package seleniumhelper.loginterpret;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import seleniumhelper.loginterpret.events.TIEvent;
+
+public class BattleLogTest {
+	
+	private static final String START = "<div>Battle between RODAN and Cloak started!</div>\n"
+			+ "<div>RODAN sent out Sparky (Pikachu)!</div>\n<div>Cloak sent out Ninetales!</div>\n";
+	private static final String TURN_1 = "<h2>Turn 1</h2>\n<div>Sparky used <strong>Thunderbolt</strong>!</div>\n"
+			+ "<div class=\"spacer\"></div>\n";
+	private static final String TURN_2 = "<h2>Turn 2</h2>\n<div>The foe's Ninetales used <strong>Sunny Day</strong>!</div>\n"
+			+ "<div>Sparky used <strong>Surf</strong>!</div>\n<div class=\"spacer\"></div>\n";
+	
+	@Test
+	public void turnInfoOfTurnNotStartedIsNotCached() {
+		BattleLog log = new BattleLog(START + TURN_1);
+		assertEquals("", log.getTurnInfo(2).getTurnHTML());
+		
+		log.appendLogText(TURN_2);
+		assertEquals(log.getTurnHTML(2), log.getTurnInfo(2).getTurnHTML());
+	}
+	
+	@Test
+	public void fileWithoutLastLineBreak() throws IOException {
+		File file = File.createTempFile("battle", ".log");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write("Battle between RODAN and Cloak started!\nRODAN sent out Sparky (Pikachu)!".getBytes("UTF-8"));
+			out.close();
+			BattleLog log = BattleLog.fromFile(file);
+			assertEquals("Battle between RODAN and Cloak started!\nRODAN sent out Sparky (Pikachu)!\n", log.getLogText());
+			assertEquals("Pikachu", log.getCurrentPokemonAtTurn("RODAN", 0, true));
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void completedTurnsStayCached() {
+		BattleLog log = new BattleLog(START + TURN_1 + TURN_2);
+		TurnInfo turn1 = log.getTurnInfo(1);
+		log.appendLogText("<h2>Turn 3</h2>\n");
+		assertSame(turn1, log.getTurnInfo(1));
+		assertEquals(1, turn1.getEvents().size());
+	}
+	
+	@Test
+	public void switchInCountIncludesDrags() {
+		BattleLog log = new BattleLog(START + TURN_1);
+		assertEquals(2, log.getSwitchInCount());
+		log.appendLogText("<h2>Turn 2</h2>\n<div>The foe's Ninetales used <strong>Roar</strong>!</div>\n"
+				+ "<div>Bob was dragged out!</div>\n");
+		assertEquals(3, log.getSwitchInCount());
+	}
+	
+	@Test
+	public void appendingInPiecesMatchesWholeLog() {
+		String full = battle(new Random(1), 30);
+		BattleLog whole = new BattleLog(full);
+		Random random = new Random(2);
+		for (int k = 0; k < 50; ++k) {
+			BattleLog log = new BattleLog("");
+			for (int i = 0; i < full.length(); ) {
+				int end = Math.min(full.length(), i + 1 + random.nextInt(300));
+				log.appendLogText(full.substring(i, end));
+				i = end;
+			}
+			assertSameLog(whole, log);
+		}
+	}
+	
+	@Test
+	public void settingGrowingLogMatchesWholeLog() {
+		String full = battle(new Random(3), 30);
+		BattleLog whole = new BattleLog(full);
+		Random random = new Random(4);
+		for (int k = 0; k < 50; ++k) {
+			BattleLog log = new BattleLog("");
+			for (int i = 0; i < full.length(); ) {
+				i = Math.min(full.length(), i + 1 + random.nextInt(300));
+				log.setLogText(full.substring(0, i));
+				// Reading turns as they arrive mustn't change what is read later
+				log.getTurnInfo(log.getCurrentTurn());
+			}
+			assertSameLog(whole, log);
+		}
+	}
+	
+	@Test
+	public void settingAnotherBattleStartsOver() {
+		BattleLog log = new BattleLog(battle(new Random(5), 10));
+		String other = battle(new Random(6), 20);
+		log.setLogText(other);
+		assertSameLog(new BattleLog(other), log);
+	}
+	
+	/**
+	 * Makes the log HTML of a battle, with chat messages, switches and the odd character reference.
+	 */
+	static String battle(Random random, int turns) {
+		String[] lines = {
+			"<div>The foe's Ninetales used <strong>Sunny Day</strong>!</div>\n",
+			"<div>Sparky used <strong>Thunderbolt</strong>!</div>\n",
+			"<div>The foe's Ninetales lost 42% of its health!</div>\n",
+			"<div class=\"chat\"><strong>Cloak:</strong> <em>gg &amp; &lt;3</em></div>\n",
+			"<div><small>(The sunlight turned harsh!)</small></div>\n"
+		};
+		StringBuilder sb = new StringBuilder("<div>Format:<br /><strong>Ubers</strong></div>\n"
+				+ "<div><small>Sleep Clause: Limit one foe put to sleep</small></div>\n" + START);
+		for (int t = 1; t <= turns; ++t) {
+			sb.append("<h2>Turn ").append(t).append("</h2>\n");
+			for (int i = random.nextInt(6); i >= 0; --i) {
+				sb.append(lines[random.nextInt(lines.length)]);
+			}
+			if (random.nextInt(4) == 0) {
+				sb.append("<div>RODAN called Sparky back!</div>\n<div>RODAN sent out Bob (Heatran)!</div>\n");
+			}
+			sb.append("<div class=\"spacer\"></div>\n");
+		}
+		return sb.toString();
+	}
+	
+	static void assertSameLog(BattleLog expected, BattleLog actual) {
+		assertEquals(expected.getLogText(), actual.getLogText());
+		assertEquals(expected.getLogHTML(true), actual.getLogHTML(true));
+		assertEquals(expected.getLogHTML(false), actual.getLogHTML(false));
+		assertEquals(expected.getTurnCount(), actual.getTurnCount());
+		assertEquals(expected.getCurrentTurn(), actual.getCurrentTurn());
+		assertArrayEquals(expected.getPlayerNames(), actual.getPlayerNames());
+		assertEquals(expected.getFormat(), actual.getFormat());
+		assertEquals(expected.getClauses(), actual.getClauses());
+		assertEquals(expected.getSwitchInCount(), actual.getSwitchInCount());
+		for (int i = 0; i <= expected.getTurnCount(); ++i) {
+			int turn = expected.getTurnNumber(i);
+			assertEquals(turn, actual.getTurnNumber(i));
+			assertEquals(expected.getTurnText(turn), actual.getTurnText(turn));
+			assertEquals(expected.getTurnHTML(turn), actual.getTurnHTML(turn));
+			assertEquals(expected.getCurrentPokemonAtTurn("RODAN", turn, true), actual.getCurrentPokemonAtTurn("RODAN", turn, true));
+			List<TIEvent> expectedEvents = expected.getTurnInfo(turn).getEvents();
+			List<TIEvent> actualEvents = actual.getTurnInfo(turn).getEvents();
+			assertEquals(expectedEvents.size(), actualEvents.size());
+			for (int e = 0; e < expectedEvents.size(); ++e) {
+				assertEquals(expectedEvents.get(e).getClass(), actualEvents.get(e).getClass());
+				assertEquals(expectedEvents.get(e).getEventText(), actualEvents.get(e).getEventText());
+			}
+		}
+	}
+}
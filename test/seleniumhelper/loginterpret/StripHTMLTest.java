@@ -0,0 +1,95 @@
+package seleniumhelper.loginterpret;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.apache.html.dom.HTMLDocumentImpl;
+import org.cyberneko.html.parsers.DOMFragmentParser;
+import org.junit.Test;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.html.HTMLDocument;
+import org.xml.sax.InputSource;
+
+/**
+ * Checks BattleLog.stripHTML gives the same text as the NekoHTML DOM based version it replaced.
+ */
+public class StripHTMLTest {
+	
+	private static final String[] TEXT = {
+		"&amp;", "&lt;", "&gt;", "&quot;", "&nbsp;", "&#39;", "&#x41;", "&eacute;", "&apos;", "&bogus;", "& ", "<3",
+		"Turn 1", " sent out ", "abc", "\n", "  ", "\r\n", "Pikachu (Sparky)", "a&amp", "&#39x", "&ampx", "&#39 ",
+		"&#0000065;", "&lt3", "&#x;", "&#;", "&AMP;", "&thetasym;"
+	};
+	private static final String[] BLOCK = { "div", "h2", "div class=\"spacer\"", "div class=\"chat\"" };
+	private static final String[] INLINE = { "strong", "em", "small", "abbr title=\"a&gt;b\"", "span", "b", "i" };
+	
+	@Test
+	public void sampleLog() throws Exception {
+		String log = "<div class=\"chat\"><small>[1:00] </small><strong style=\"color:#1A8\">geniusect:</strong> <em>hi &lt;3</em></div>\n"
+				+ "<div>Format:<br /><strong>Ubers</strong></div><div><small>Sleep Clause: Limit one foe put to sleep</small></div>"
+				+ "<div>Battle between RODAN and Cloak started!</div><div>RODAN sent out Sparky (Pikachu)!</div>"
+				+ "<div class=\"spacer\"></div><h2>Turn 1</h2><div>The foe's Ninetales used <strong>Sunny Day</strong>!</div>"
+				+ "<div><small>(The sunlight turned harsh!)</small></div><div class=\"spacer\"></div>";
+		assertEquals(nekoStripHTML(log), BattleLog.stripHTML(log));
+	}
+	
+	@Test
+	public void generatedLogs() throws Exception {
+		Random random = new Random(1);
+		for (int t = 0; t < 2000; ++t) {
+			StringBuilder sb = new StringBuilder();
+			for (int n = 1 + random.nextInt(15); n > 0; --n) {
+				element(sb, random, 0, true);
+				if (random.nextInt(4) == 0) {
+					sb.append(TEXT[random.nextInt(TEXT.length)]);
+				}
+			}
+			String log = sb.toString();
+			assertEquals(log, nekoStripHTML(log), BattleLog.stripHTML(log));
+		}
+	}
+	
+	private static void element(StringBuilder sb, Random random, int depth, boolean block) {
+		String tag = (block && random.nextBoolean()) ? BLOCK[random.nextInt(BLOCK.length)] : INLINE[random.nextInt(INLINE.length)];
+		sb.append('<').append(tag).append('>');
+		for (int n = random.nextInt(5); n > 0; --n) {
+			int c = random.nextInt(10);
+			if (c < 5) {
+				sb.append(TEXT[random.nextInt(TEXT.length)]);
+			}
+			else if (c < 6) {
+				sb.append(random.nextBoolean() ? "<br>" : "<br />");
+			}
+			else if (c < 7) {
+				sb.append("<!-- c -->");
+			}
+			else if (depth < 3) {
+				element(sb, random, depth + 1, false);
+			}
+		}
+		sb.append("</").append(tag.split(" ")[0]).append('>');
+	}
+	
+	/**
+	 * The NekoHTML version of stripHTML, as it was.
+	 */
+	private static String nekoStripHTML(String logHTML) throws Exception {
+		HTMLDocument document = new HTMLDocumentImpl();
+		DOMFragmentParser parser = new DOMFragmentParser();
+		DocumentFragment doc = document.createDocumentFragment();
+		parser.parse(new InputSource(new ByteArrayInputStream(logHTML.getBytes())), doc);
+		StringBuffer text = new StringBuffer();
+		NodeList list = doc.getChildNodes();
+		for (int i = 0; i < list.getLength(); ++i) {
+			Node node = list.item(i);
+			if (node.getTextContent().trim().length() > 0) {
+				text.append(node.getTextContent() + "\n");
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,97 @@
+package seleniumhelper.loginterpret;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class SymbolTableTest {
+	
+	private static final int THREADS = 8;
+	private static final int NAMES = 2000;
+	
+	@Test
+	public void symbolsAreNumberedInOrderSeen() {
+		SymbolTable table = new SymbolTable("test");
+		assertEquals(0, table.symbol("Pikachu"));
+		assertEquals(1, table.symbol("Heatran"));
+		assertEquals(0, table.symbol("xPikachux", 1, 8));
+		assertEquals(SymbolTable.NONE, table.find("Ninetales"));
+		assertEquals(SymbolTable.NONE, table.symbol((String) null));
+		assertEquals("Heatran", table.name(1));
+		assertEquals(2, table.size());
+	}
+	
+	@Test
+	public void internReturnsOneInstance() {
+		SymbolTable table = new SymbolTable("test");
+		String name = table.intern(new String("Ninetales"));
+		assertSame(name, table.intern(new String("Ninetales")));
+		assertSame(name, table.intern("The Ninetales", 4, 13));
+	}
+	
+	@Test
+	public void moveIdsOfNamesAndClientIdsMatch() {
+		assertEquals("sunnyday", SymbolTable.moveId("Sunny Day"));
+		assertEquals("uturn", SymbolTable.moveId("U-turn"));
+		assertEquals("hiddenpower", SymbolTable.moveId("Hidden Power"));
+		assertEquals("hiddenpower", SymbolTable.moveId("hiddenpowerice"));
+		assertEquals("hiddenpower", SymbolTable.moveId("hiddenpowerfire70"));
+		assertNull(SymbolTable.moveId(null));
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void nameOfUnknownSymbolThrows() {
+		new SymbolTable("test").name(0);
+	}
+	
+	/**
+	 * Every thread adds the same new names at once, in different orders, and reads each name back
+	 * from its symbol straight away, so lookups race adds and the table growing.
+	 */
+	@Test
+	public void concurrentInternAndName() throws Exception {
+		for (int round = 0; round < 300; ++round) {
+			final SymbolTable table = new SymbolTable("test");
+			final CyclicBarrier start = new CyclicBarrier(THREADS);
+			ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+			List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+			for (int t = 0; t < THREADS; ++t) {
+				final int offset = t * (NAMES / THREADS);
+				results.add(pool.submit(new Callable<int[]>() {
+					public int[] call() throws Exception {
+						int[] symbols = new int[NAMES];
+						start.await();
+						for (int i = 0; i < NAMES; ++i) {
+							int n = (i + offset) % NAMES;
+							String name = "name" + n;
+							symbols[n] = table.symbol(name);
+							assertEquals(name, table.name(symbols[n]));
+							assertEquals(name, table.intern(name));
+							assertEquals(symbols[n], table.find(name));
+						}
+						return symbols;
+					}
+				}));
+			}
+			int[] first = results.get(0).get();
+			for (Future<int[]> result : results) {
+				int[] symbols = result.get();
+				for (int n = 0; n < NAMES; ++n) {
+					assertEquals(first[n], symbols[n]);
+				}
+			}
+			pool.shutdown();
+			assertEquals(NAMES, table.size());
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package seleniumhelper.loginterpret.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import seleniumhelper.loginterpret.TIContext;
+import seleniumhelper.loginterpret.TurnInfo;
+
+/**
+ * Checks EventCursor reads the same events as TurnInfo.
+ */
+public class EventCursorTest {
+	
+	private static final String[] LINES = {
+		"<div>Sparky used <strong>Thunderbolt</strong>!</div>",
+		"<div>The foe's Ninetales lost 42% of its health!</div>",
+		"<div>The foe's Ninetales fainted!</div>",
+		"<div>RODAN called Sparky back!</div>",
+		"<div>RODAN sent out Bob (Heatran)!</div>",
+		"<div><small>(The sunlight turned harsh!)</small></div>",
+		"<div class=\"spacer\"></div>",
+		"\n",
+		"\n\n"
+	};
+	
+	@Test
+	public void cursorMatchesTurnInfo() {
+		Random random = new Random(1);
+		EventCursor cursor = new EventCursor();
+		for (int t = 0; t < 2000; ++t) {
+			StringBuilder sb = new StringBuilder("<h2>Turn 1</h2>");
+			for (int n = random.nextInt(20); n > 0; --n) {
+				sb.append(LINES[random.nextInt(LINES.length)]);
+			}
+			String turnHTML = sb.toString();
+			List<TIEvent> events = new TurnInfo(turnHTML, new TIContext()).getEvents();
+			cursor.reset(turnHTML);
+			for (TIEvent event : events) {
+				assertTrue(turnHTML, cursor.next());
+				assertEquals(event.getEventText(), cursor.textSpan().toString());
+				assertEquals(event.getClass(), cursor.create().getClass());
+			}
+			assertFalse(turnHTML, cursor.next());
+		}
+	}
+}